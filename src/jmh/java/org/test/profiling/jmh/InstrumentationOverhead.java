@@ -0,0 +1,70 @@
+package org.test.profiling.jmh;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link InstrumentationOverheadBenchmark} and prints the overhead that {@code TimingTestContextManager} adds
+ * to every listener callback, in nanoseconds:
+ *
+ * <pre>
+ * overhead per callback = (instrumented - bare) / (callbacks per operation * listeners)
+ * </pre>
+ *
+ * One figure is printed per instrumented manager, benchmark and listener count. The timing reports are corrected with
+ * the measurement floor that {@code TimingTestContextManager} calibrates in the test JVM itself, these figures show
+ * how that floor compares to the overhead measured in isolation. Any arguments are passed on to JMH, run it with
+ * {@code mvn -Pjmh verify -DskipTests -Djmh.main=org.test.profiling.jmh.InstrumentationOverhead -Djmh.args=}.
+ */
+public class InstrumentationOverhead {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Collection<RunResult> results = new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(InstrumentationOverheadBenchmark.class.getSimpleName())
+				.build()).run();
+
+		Map<String, Double> bare = new TreeMap<>();
+		Map<String, Double> instrumented = new TreeMap<>();
+		Map<String, Integer> listeners = new TreeMap<>();
+		for (RunResult result : results) {
+			String benchmark = result.getParams().getBenchmark();
+			String key = benchmark.substring(benchmark.lastIndexOf('.') + 1) + ".listeners-"
+					+ result.getParams().getParam("listeners");
+			listeners.put(key, Integer.valueOf(result.getParams().getParam("listeners")));
+			double score = result.getPrimaryResult().getScore();
+			String manager = result.getParams().getParam("manager");
+			if ("bare".equals(manager)) {
+				bare.put(key, score);
+			} else {
+				instrumented.put(manager + "." + key, score);
+			}
+		}
+
+		System.out.println("------------------------------------------------------------------------------------------------");
+		System.out.println("TimingTestContextManager overhead per listener callback");
+		for (Map.Entry<String, Double> entry : instrumented.entrySet()) {
+			String key = entry.getKey().substring(entry.getKey().indexOf('.') + 1);
+			Double baseline = bare.get(key);
+			if (baseline == null) {
+				continue;
+			}
+			double perCallback = (entry.getValue() - baseline)
+					/ (InstrumentationOverheadBenchmark.CALLBACKS_PER_OPERATION * listeners.get(key));
+			System.out.println(String.format("%1$-50s %2$12.1fns", entry.getKey(), perCallback));
+		}
+		System.out.println("------------------------------------------------------------------------------------------------");
+	}
+
+	private InstrumentationOverhead() {
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.test.profiling.jmh;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextManager;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.util.ReflectionUtils;
+import org.test.profiling.TimingTestContextManager;
+import org.test.profiling.TimingTestContextManager.Recording;
+
+/**
+ * Measures how much time the instrumentation in {@link TimingTestContextManager} adds to the lifecycle of a single test
+ * method, compared to the plain Spring {@link TestContextManager}. The listeners do nothing, so whatever the
+ * instrumented managers cost on top of {@code bare} is instrumentation overhead: the clock and counter reads and the
+ * recording of the sample. The {@code timing} manager records into the Micrometer timers on the test thread (registry
+ * lookup and percentile bookkeeping included), {@code ring-buffer} writes the sample into a ring buffer that is drained
+ * on a background thread.
+ *
+ * <p>Each operation is the four test method callbacks ({@code beforeTestMethod}, {@code beforeTestExecution},
+ * {@code afterTestExecution} and {@code afterTestMethod}) over {@code listeners} listeners. The {@code contended}
+ * variant runs on all cores against a single manager, as a parallel suite would. See {@link InstrumentationOverhead} for
+ * the per-callback figures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class InstrumentationOverheadBenchmark {
+
+	/**
+	 * The number of callbacks each operation invokes on each listener.
+	 */
+	static final int CALLBACKS_PER_OPERATION = 4;
+
+	@Param({ "bare", "timing", "ring-buffer" })
+	String manager;
+
+	@Param({ "1", "4", "13" })
+	int listeners;
+
+	private TestContextManager testContextManager;
+
+	private final Subject testInstance = new Subject();
+
+	private final Method testMethod = ReflectionUtils.findMethod(Subject.class, "test");
+
+	@Setup
+	public void setup() {
+		testContextManager = createTestContextManager(manager);
+		testContextManager.getTestExecutionListeners().clear();
+		for (int i = 0; i < listeners; i++) {
+			testContextManager.registerTestExecutionListeners(new NoOpTestExecutionListener());
+		}
+	}
+
+	static TestContextManager createTestContextManager(String manager) {
+		switch (manager) {
+			case "bare":
+				return new TestContextManager(Subject.class);
+			case "timing":
+				return new TimingTestContextManager(Subject.class, Recording.MICROMETER);
+			case "ring-buffer":
+				return new TimingTestContextManager(Subject.class, Recording.RING_BUFFER);
+			default:
+				throw new IllegalArgumentException("Unknown manager " + manager);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void testMethodLifecycle() throws Exception {
+		runTestMethodLifecycle();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public void testMethodLifecycleContended() throws Exception {
+		runTestMethodLifecycle();
+	}
+
+	private void runTestMethodLifecycle() throws Exception {
+		testContextManager.beforeTestMethod(testInstance, testMethod);
+		testContextManager.beforeTestExecution(testInstance, testMethod);
+		testContextManager.afterTestExecution(testInstance, testMethod, null);
+		testContextManager.afterTestMethod(testInstance, testMethod, null);
+	}
+
+	/**
+	 * A plain class without any Spring test configuration, the application context is never loaded.
+	 */
+	public static class Subject {
+
+		public void test() {
+		}
+	}
+
+	/**
+	 * Overrides every callback so that every callback is dispatched, whatever the manager does to skip inherited no-op
+	 * callbacks.
+	 */
+	static class NoOpTestExecutionListener implements TestExecutionListener {
+
+		@Override
+		public void beforeTestClass(TestContext testContext) {
+		}
+
+		@Override
+		public void prepareTestInstance(TestContext testContext) {
+		}
+
+		@Override
+		public void beforeTestMethod(TestContext testContext) {
+		}
+
+		@Override
+		public void beforeTestExecution(TestContext testContext) {
+		}
+
+		@Override
+		public void afterTestExecution(TestContext testContext) {
+		}
+
+		@Override
+		public void afterTestMethod(TestContext testContext) {
+		}
+
+		@Override
+		public void afterTestClass(TestContext testContext) {
+		}
+	}
+
+}
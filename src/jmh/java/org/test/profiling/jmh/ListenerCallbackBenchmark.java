@@ -0,0 +1,120 @@
+package org.test.profiling.jmh;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Drives a single {@link TestExecutionListener} directly against a {@link TestContext}, one benchmark per lifecycle
+ * callback, so that each listener's cost can be measured without the noise of running a whole suite. Run with
+ * {@code -prof gc} (the default of the {@code jmh} profile) to get the allocations per callback.
+ *
+ * <p>The {@code before} and {@code after} callbacks of a test method are measured as a pair, the transactional listeners
+ * need the transaction that {@code beforeTestMethod} begins to be rolled back again.
+ *
+ * <p>{@code testClasses} controls how many distinct test classes the callbacks rotate through, to show what per-class
+ * caches such as the metadata cache of {@code CachingTransactionalTestExecutionListener} cost once there is more than
+ * one class.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ListenerCallbackBenchmark {
+
+	static final Map<String, String> LISTENERS = new LinkedHashMap<>();
+
+	static {
+		LISTENERS.put("DirtiesContextBeforeModes", "org.springframework.test.context.support.DirtiesContextBeforeModesTestExecutionListener");
+		LISTENERS.put("Mockito", "org.springframework.boot.test.mock.mockito.MockitoTestExecutionListener");
+		LISTENERS.put("DependencyInjection", "org.springframework.boot.test.autoconfigure.SpringBootDependencyInjectionTestExecutionListener");
+		LISTENERS.put("DirtiesContext", "org.springframework.test.context.support.DirtiesContextTestExecutionListener");
+		LISTENERS.put("Transactional", "org.springframework.test.context.transaction.TransactionalTestExecutionListener");
+		LISTENERS.put("CachingTransactional", "org.test.profiling.CachingTransactionalTestExecutionListener");
+		LISTENERS.put("SqlScripts", "org.springframework.test.context.jdbc.SqlScriptsTestExecutionListener");
+		LISTENERS.put("EventPublishing", "org.springframework.test.context.event.EventPublishingTestExecutionListener");
+		LISTENERS.put("ResetMocks", "org.springframework.boot.test.mock.mockito.ResetMocksTestExecutionListener");
+		LISTENERS.put("RestDocs", "org.springframework.boot.test.autoconfigure.restdocs.RestDocsTestExecutionListener");
+		LISTENERS.put("MockRestServiceServerReset", "org.springframework.boot.test.autoconfigure.web.client.MockRestServiceServerResetTestExecutionListener");
+		LISTENERS.put("MockMvcPrintOnlyOnFailure", "org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrintOnlyOnFailureTestExecutionListener");
+		LISTENERS.put("WebDriver", "org.springframework.boot.test.autoconfigure.web.servlet.WebDriverTestExecutionListener");
+	}
+
+	@Param({ "DirtiesContextBeforeModes", "Mockito", "DependencyInjection", "DirtiesContext", "Transactional",
+			"CachingTransactional", "SqlScripts", "EventPublishing", "ResetMocks", "RestDocs",
+			"MockRestServiceServerReset", "MockMvcPrintOnlyOnFailure", "WebDriver" })
+	String listener;
+
+	@Param({ "1", "8" })
+	int testClasses;
+
+	private TestExecutionListener testExecutionListener;
+
+	private TestContext[] testContexts;
+
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		testExecutionListener = (TestExecutionListener) BeanUtils.instantiateClass(
+				ClassUtils.forName(LISTENERS.get(listener), getClass().getClassLoader()));
+		testContexts = new TestContext[testClasses];
+		for (int i = 0; i < testClasses; i++) {
+			testContexts[i] = TransactionalFixtures.createTestContext(TransactionalFixtures.FIXTURES[i]);
+		}
+	}
+
+	private TestContext nextTestContext() {
+		TestContext testContext = testContexts[next];
+		next = (next + 1) % testContexts.length;
+		return testContext;
+	}
+
+	@Benchmark
+	public void beforeTestClass() throws Exception {
+		testExecutionListener.beforeTestClass(nextTestContext());
+	}
+
+	@Benchmark
+	public void prepareTestInstance() throws Exception {
+		testExecutionListener.prepareTestInstance(nextTestContext());
+	}
+
+	@Benchmark
+	public void beforeAndAfterTestMethod() throws Exception {
+		TestContext testContext = nextTestContext();
+		testExecutionListener.beforeTestMethod(testContext);
+		testExecutionListener.afterTestMethod(testContext);
+	}
+
+	@Benchmark
+	public void beforeAndAfterTestExecution() throws Exception {
+		TestContext testContext = nextTestContext();
+		testExecutionListener.beforeTestExecution(testContext);
+		testExecutionListener.afterTestExecution(testContext);
+	}
+
+	@Benchmark
+	public void afterTestClass() throws Exception {
+		testExecutionListener.afterTestClass(nextTestContext());
+	}
+
+}
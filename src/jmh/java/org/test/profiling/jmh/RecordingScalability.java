@@ -0,0 +1,60 @@
+package org.test.profiling.jmh;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the contended {@link InstrumentationOverheadBenchmark} with one thread, then two, up to the number of cores,
+ * against a single instrumented manager, and prints the test method lifecycles per second for each thread count next
+ * to how much faster that is than one thread. Recording that takes no lock shared between the test threads scales
+ * with the threads up to the number of cores. Any arguments are passed on to JMH, by default the {@code timing} and
+ * {@code ring-buffer} managers are run with 4 listeners:
+ * {@code mvn -Pjmh verify -DskipTests -Djmh.main=org.test.profiling.jmh.RecordingScalability -Djmh.args=}.
+ */
+public class RecordingScalability {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		Map<String, Map<Integer, Double>> throughput = new TreeMap<>();
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads++) {
+			OptionsBuilder options = new OptionsBuilder();
+			options.parent(commandLineOptions)
+					.include(InstrumentationOverheadBenchmark.class.getSimpleName() + ".testMethodLifecycleContended")
+					.threads(threads);
+			if (!commandLineOptions.getParameter("manager").hasValue()) {
+				options.param("manager", "timing", "ring-buffer");
+			}
+			if (!commandLineOptions.getParameter("listeners").hasValue()) {
+				options.param("listeners", "4");
+			}
+			for (RunResult result : new Runner(options.build()).run()) {
+				String key = result.getParams().getParam("manager") + ".listeners-"
+						+ result.getParams().getParam("listeners");
+				// The score is the average time of one lifecycle on one thread, in nanoseconds.
+				throughput.computeIfAbsent(key, manager -> new TreeMap<>()).put(threads,
+						threads * 1e9 / result.getPrimaryResult().getScore());
+			}
+		}
+
+		System.out.println("------------------------------------------------------------------------------------------------");
+		System.out.println("Test method lifecycles per second by thread count, against a single manager");
+		throughput.forEach((key, byThreads) -> {
+			double single = byThreads.get(1);
+			byThreads.forEach((threads, perSecond) -> System.out.println(String.format(
+					"%1$-30s %2$3d threads %3$15.0f/s %4$6.2fx", key, threads, perSecond, perSecond / single)));
+		});
+		System.out.println("------------------------------------------------------------------------------------------------");
+	}
+
+	private RecordingScalability() {
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.test.profiling.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.util.ReflectionUtils;
+import org.test.profiling.CachingTransactionalTestExecutionListener;
+
+/**
+ * Measures running the {@code @BeforeTransaction} and {@code @AfterTransaction} methods of a test instance, without the
+ * transaction in between:
+ *
+ * <ul>
+ * <li>{@code transactionalListener} - Spring's listener, which looks the methods up and invokes them reflectively for
+ * every test.</li>
+ * <li>{@code cachingListener} - {@link CachingTransactionalTestExecutionListener}, which caches method handles per
+ * test class.</li>
+ * <li>{@code reflectiveInvoke} and {@code methodHandleInvoke} - the two ways of invoking the cached methods on their
+ * own, {@link Method#invoke} against {@link MethodHandle#invokeExact} on a handle adapted to {@code (Object)void}.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TransactionCallbackBenchmark {
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class);
+
+	private final ExposedTransactionalListener transactionalListener = new ExposedTransactionalListener();
+
+	private final ExposedCachingListener cachingListener = new ExposedCachingListener();
+
+	private TestContext testContext;
+
+	private Object testInstance;
+
+	private Method beforeTransaction;
+
+	private Method afterTransaction;
+
+	private MethodHandle beforeTransactionHandle;
+
+	private MethodHandle afterTransactionHandle;
+
+	@Setup
+	public void setup() throws Exception {
+		// Loading the application context also applies Spring Boot's logging configuration, the listeners log at debug.
+		testContext = TransactionalFixtures.createTestContext(TransactionalFixtures.Fixture1.class);
+		testInstance = testContext.getTestInstance();
+		beforeTransaction = ReflectionUtils.findMethod(testInstance.getClass(), "beforeTransaction");
+		afterTransaction = ReflectionUtils.findMethod(testInstance.getClass(), "afterTransaction");
+		beforeTransactionHandle = MethodHandles.lookup().unreflect(beforeTransaction).asType(INVOKER_TYPE);
+		afterTransactionHandle = MethodHandles.lookup().unreflect(afterTransaction).asType(INVOKER_TYPE);
+	}
+
+	@Benchmark
+	public void transactionalListener() throws Exception {
+		transactionalListener.runBeforeAndAfterTransactionMethods(testContext);
+	}
+
+	@Benchmark
+	public void cachingListener() throws Exception {
+		cachingListener.runBeforeAndAfterTransactionMethods(testContext);
+	}
+
+	@Benchmark
+	public void reflectiveInvoke() throws Exception {
+		beforeTransaction.invoke(testInstance);
+		afterTransaction.invoke(testInstance);
+	}
+
+	@Benchmark
+	public void methodHandleInvoke() throws Throwable {
+		beforeTransactionHandle.invokeExact(testInstance);
+		afterTransactionHandle.invokeExact(testInstance);
+	}
+
+	static class ExposedTransactionalListener extends TransactionalTestExecutionListener {
+
+		void runBeforeAndAfterTransactionMethods(TestContext testContext) throws Exception {
+			runBeforeTransactionMethods(testContext);
+			runAfterTransactionMethods(testContext);
+		}
+	}
+
+	static class ExposedCachingListener extends CachingTransactionalTestExecutionListener {
+
+		void runBeforeAndAfterTransactionMethods(TestContext testContext) throws Exception {
+			runBeforeTransactionMethods(testContext);
+			runAfterTransactionMethods(testContext);
+		}
+	}
+
+}
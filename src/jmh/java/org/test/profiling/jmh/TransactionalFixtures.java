@@ -0,0 +1,88 @@
+package org.test.profiling.jmh;
+
+import java.lang.reflect.Method;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextManager;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.test.context.transaction.BeforeTransaction;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Test classes for the benchmarks to drive listeners against. They are identical, so they share one application
+ * context (backed by an in-memory H2 database), but each one is a separate entry in any per-class cache.
+ */
+public final class TransactionalFixtures {
+
+	static final Class<?>[] FIXTURES = { Fixture1.class, Fixture2.class, Fixture3.class, Fixture4.class,
+			Fixture5.class, Fixture6.class, Fixture7.class, Fixture8.class };
+
+	/**
+	 * Create a test context for the fixture that is positioned on its {@code test} method and has its application
+	 * context loaded, so that the benchmarks do not measure the first context load.
+	 */
+	static TestContext createTestContext(Class<?> fixture) throws Exception {
+		TestContext testContext = new TestContextManager(fixture).getTestContext();
+		Object testInstance = fixture.getDeclaredConstructor().newInstance();
+		Method testMethod = ReflectionUtils.findMethod(fixture, "test");
+		testContext.updateState(testInstance, testMethod, null);
+		testContext.getApplicationContext();
+		return testContext;
+	}
+
+	@SpringBootTest(properties = {
+			"spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+			"spring.datasource.username=sa",
+			"spring.datasource.password="
+	})
+	@Transactional
+	public abstract static class TransactionalFixture {
+
+		@Autowired
+		DataSource dataSource;
+
+		@BeforeTransaction
+		public void beforeTransaction() {
+		}
+
+		@AfterTransaction
+		public void afterTransaction() {
+		}
+
+		public void test() {
+		}
+	}
+
+	public static class Fixture1 extends TransactionalFixture {
+	}
+
+	public static class Fixture2 extends TransactionalFixture {
+	}
+
+	public static class Fixture3 extends TransactionalFixture {
+	}
+
+	public static class Fixture4 extends TransactionalFixture {
+	}
+
+	public static class Fixture5 extends TransactionalFixture {
+	}
+
+	public static class Fixture6 extends TransactionalFixture {
+	}
+
+	public static class Fixture7 extends TransactionalFixture {
+	}
+
+	public static class Fixture8 extends TransactionalFixture {
+	}
+
+	private TransactionalFixtures() {
+	}
+
+}
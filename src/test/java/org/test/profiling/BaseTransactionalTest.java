@@ -5,7 +5,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
 @Import(BaseTransactionalTest.Configuration.class)
-public class BaseTransactionalTest extends BaseTest {
+public abstract class BaseTransactionalTest extends BaseTest {
 
 	protected static class Configuration {
 		
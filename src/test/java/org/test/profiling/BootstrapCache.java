@@ -0,0 +1,313 @@
+package org.test.profiling;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.test.context.SpringBootTestContextBootstrapper;
+import org.springframework.test.context.BootstrapContext;
+import org.springframework.test.context.CacheAwareContextLoaderDelegate;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextBootstrapper;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.support.AbstractTestContextBootstrapper;
+import org.springframework.test.context.support.DefaultBootstrapContext;
+import org.springframework.test.context.support.DefaultTestContext;
+import org.springframework.test.context.web.WebMergedContextConfiguration;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Resolves the bootstrapper, the {@link MergedContextConfiguration} and the listeners of a test class once per distinct
+ * configuration, rather than once per test class. Spring merges the annotations of the whole class hierarchy and Spring
+ * Boot searches the package for the {@code @SpringBootConfiguration} for every test class, even though a suite of
+ * subclasses of the same base test all end up with the same configuration.
+ *
+ * <p>Test classes share a resolution if they are in the same package and inherit all of their configuration from the
+ * same class: neither they nor any superclass below it declare annotations (other than JUnit's on methods), nested
+ * classes, annotated fields, interfaces or a default {@code -context.xml} or {@code Context.groovy} resource. Anything
+ * else a bootstrapper could look at is then the same for all of them. A class that declares any of those is resolved
+ * on its own, as before.
+ *
+ * <p>A hit gets a merged configuration that is equal to the cached one but names its own test class, a new test
+ * context with the attributes the bootstrapper had set on the first one, and new instances of the same listeners. Its
+ * own bootstrapper is never called. The only attribute the bootstrappers set while building the test context is
+ * Spring Boot's flag that tells the {@code ServletTestExecutionListener} whether to set up a mock servlet request. It
+ * follows from the {@code webEnvironment} of {@code @SpringBootTest} and the class path, both of which test classes
+ * that share a resolution have in common. So only the resolutions of bootstrappers that build the test context the way
+ * Spring's {@link AbstractTestContextBootstrapper} or the {@link SpringBootTestContextBootstrapper} do are cached, one
+ * that overrides {@link TestContextBootstrapper#buildTestContext()} may set attributes of its own.
+ */
+class BootstrapCache {
+
+	private final Map<Key, Resolution> resolutions = new ConcurrentHashMap<>();
+
+	private final boolean enabled;
+
+	/**
+	 * @param enabled {@code false} to resolve every test class on its own, but still ahead of the
+	 * {@code TestContextManager}, so that the resolution can be timed the same way
+	 */
+	BootstrapCache(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param testClass the test class
+	 * @param cacheAwareContextLoaderDelegate the delegate the test class loads its application context through
+	 * @param bootstrapperFactory creates the bootstrapper of a test class, on a miss
+	 * @return a bootstrapper that hands the resolved test context and listeners to the {@code TestContextManager}
+	 */
+	ResolvedBootstrapper bootstrap(Class<?> testClass, CacheAwareContextLoaderDelegate cacheAwareContextLoaderDelegate,
+			BootstrapperFactory bootstrapperFactory) {
+		BootstrapContext bootstrapContext = new DefaultBootstrapContext(testClass, cacheAwareContextLoaderDelegate);
+		Key key = enabled ? new Key(testClass) : null;
+		Resolution resolution = enabled ? resolutions.get(key) : null;
+		if (resolution != null) {
+			return resolution.replay(bootstrapContext);
+		}
+		TestContextBootstrapper bootstrapper = bootstrapperFactory.create(testClass, bootstrapContext);
+		TestContext testContext = bootstrapper.buildTestContext();
+		StartupTimeline.reached(StartupTimeline.Milestone.BOOTSTRAPPER_RESOLVED);
+		List<TestExecutionListener> listeners = bootstrapper.getTestExecutionListeners();
+		StartupTimeline.reached(StartupTimeline.Milestone.LISTENERS_INSTANTIATED);
+		if (!enabled || !buildsTestContextsAlike(bootstrapper.getClass())) {
+			return new ResolvedBootstrapper(bootstrapper.getClass(), bootstrapContext, testContext,
+					bootstrapper::buildMergedContextConfiguration, listeners, false);
+		}
+		// Resolved a second time, once per distinct configuration, the test context does not expose it.
+		MergedContextConfiguration mergedConfig = bootstrapper.buildMergedContextConfiguration();
+		if (isReplayable(mergedConfig)) {
+			resolutions.putIfAbsent(key, new Resolution(bootstrapper.getClass(), mergedConfig, testContext, listeners));
+		}
+		return new ResolvedBootstrapper(bootstrapper.getClass(), bootstrapContext, testContext, () -> mergedConfig,
+				listeners, false);
+	}
+
+	/**
+	 * @return whether the bootstrapper builds its test contexts the way Spring's or Spring Boot's bootstrapper does,
+	 * setting no attributes that depend on more than the test class's configuration
+	 */
+	private static boolean buildsTestContextsAlike(Class<? extends TestContextBootstrapper> bootstrapperType) {
+		Method buildTestContext = ReflectionUtils.findMethod(bootstrapperType, "buildTestContext");
+		return buildTestContext != null
+				&& (buildTestContext.getDeclaringClass() == AbstractTestContextBootstrapper.class
+						|| buildTestContext.getDeclaringClass() == SpringBootTestContextBootstrapper.class);
+	}
+
+	/**
+	 * Only the configurations that can be copied for another test class without losing anything are cached.
+	 */
+	private static boolean isReplayable(MergedContextConfiguration mergedConfig) {
+		return (mergedConfig.getClass() == MergedContextConfiguration.class
+				|| mergedConfig.getClass() == WebMergedContextConfiguration.class)
+				&& (mergedConfig.getParent() == null || isReplayable(mergedConfig.getParent()));
+	}
+
+	/**
+	 * @return the merged configuration with the test class and the loader delegate replaced
+	 */
+	private static MergedContextConfiguration forTestClass(MergedContextConfiguration mergedConfig, Class<?> testClass,
+			CacheAwareContextLoaderDelegate cacheAwareContextLoaderDelegate) {
+		MergedContextConfiguration parent = mergedConfig.getParent() == null ? null
+				: forTestClass(mergedConfig.getParent(), testClass, cacheAwareContextLoaderDelegate);
+		if (mergedConfig instanceof WebMergedContextConfiguration) {
+			return new WebMergedContextConfiguration(testClass, mergedConfig.getLocations(), mergedConfig.getClasses(),
+					mergedConfig.getContextInitializerClasses(), mergedConfig.getActiveProfiles(),
+					mergedConfig.getPropertySourceLocations(), mergedConfig.getPropertySourceProperties(),
+					mergedConfig.getContextCustomizers(),
+					((WebMergedContextConfiguration) mergedConfig).getResourceBasePath(),
+					mergedConfig.getContextLoader(), cacheAwareContextLoaderDelegate, parent);
+		}
+		return new MergedContextConfiguration(testClass, mergedConfig.getLocations(), mergedConfig.getClasses(),
+				mergedConfig.getContextInitializerClasses(), mergedConfig.getActiveProfiles(),
+				mergedConfig.getPropertySourceLocations(), mergedConfig.getPropertySourceProperties(),
+				mergedConfig.getContextCustomizers(), mergedConfig.getContextLoader(), cacheAwareContextLoaderDelegate,
+				parent);
+	}
+
+	/**
+	 * Creates and initializes the bootstrapper of a test class, through Spring's {@code BootstrapUtils}.
+	 */
+	@FunctionalInterface
+	interface BootstrapperFactory {
+
+		TestContextBootstrapper create(Class<?> testClass, BootstrapContext bootstrapContext);
+	}
+
+	/**
+	 * The class a test class inherits its configuration from and the package Spring Boot searches for the
+	 * {@code @SpringBootConfiguration}.
+	 */
+	static final class Key {
+
+		private final Class<?> configurationClass;
+
+		private final String packageName;
+
+		Key(Class<?> testClass) {
+			Class<?> configurationClass = LifecycleMetadataIndex.getConfigurationClass(testClass);
+			this.configurationClass = configurationClass != null ? configurationClass : findConfigurationClass(testClass);
+			this.packageName = testClass.getPackage() != null ? testClass.getPackage().getName() : "";
+		}
+
+		/**
+		 * @return the class the test class inherits all of its configuration from, found by reflection
+		 */
+		static Class<?> findConfigurationClass(Class<?> testClass) {
+			Class<?> configurationClass = testClass;
+			while (!declaresConfiguration(configurationClass) && configurationClass.getSuperclass() != null
+					&& configurationClass.getSuperclass() != Object.class) {
+				configurationClass = configurationClass.getSuperclass();
+			}
+			return configurationClass;
+		}
+
+		private static boolean declaresConfiguration(Class<?> clazz) {
+			return clazz.getDeclaredAnnotations().length > 0 || clazz.getDeclaredClasses().length > 0
+					|| clazz.getInterfaces().length > 0
+					|| Arrays.stream(clazz.getDeclaredFields()).anyMatch(field -> field.getDeclaredAnnotations().length > 0)
+					|| Arrays.stream(clazz.getDeclaredMethods()).anyMatch(Key::hasNonJUnitAnnotations)
+					|| clazz.getResource(clazz.getSimpleName() + "-context.xml") != null
+					|| clazz.getResource(clazz.getSimpleName() + "Context.groovy") != null;
+		}
+
+		private static boolean hasNonJUnitAnnotations(Method method) {
+			return Arrays.stream(method.getDeclaredAnnotations())
+					.anyMatch(annotation -> !annotation.annotationType().getName().startsWith("org.junit."));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return configurationClass == key.configurationClass && packageName.equals(key.packageName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(configurationClass, packageName);
+		}
+	}
+
+	/**
+	 * What a bootstrapper resolved for the first test class of a key.
+	 */
+	private static final class Resolution {
+
+		private final Class<? extends TestContextBootstrapper> bootstrapperType;
+
+		private final MergedContextConfiguration mergedConfig;
+
+		private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+		private final List<Class<? extends TestExecutionListener>> listenerTypes;
+
+		Resolution(Class<? extends TestContextBootstrapper> bootstrapperType, MergedContextConfiguration mergedConfig,
+				TestContext testContext, List<TestExecutionListener> listeners) {
+			this.bootstrapperType = bootstrapperType;
+			this.mergedConfig = mergedConfig;
+			for (String name : testContext.attributeNames()) {
+				this.attributes.put(name, testContext.getAttribute(name));
+			}
+			this.listenerTypes = listeners.stream().map(TestExecutionListener::getClass).collect(Collectors.toList());
+		}
+
+		ResolvedBootstrapper replay(BootstrapContext bootstrapContext) {
+			Class<?> testClass = bootstrapContext.getTestClass();
+			MergedContextConfiguration mergedConfig = forTestClass(this.mergedConfig, testClass,
+					bootstrapContext.getCacheAwareContextLoaderDelegate());
+			TestContext testContext = new DefaultTestContext(testClass, mergedConfig,
+					bootstrapContext.getCacheAwareContextLoaderDelegate());
+			attributes.forEach(testContext::setAttribute);
+			List<TestExecutionListener> listeners = listenerTypes.stream()
+					.map(listenerType -> (TestExecutionListener) BeanUtils.instantiateClass(listenerType))
+					.collect(Collectors.toList());
+			return new ResolvedBootstrapper(bootstrapperType, bootstrapContext, testContext, () -> mergedConfig,
+					listeners, true);
+		}
+	}
+
+	/**
+	 * Hands what was resolved to the {@code TestContextManager}, which builds the test context and asks for the
+	 * listeners exactly once.
+	 */
+	static final class ResolvedBootstrapper implements TestContextBootstrapper {
+
+		private final Class<? extends TestContextBootstrapper> bootstrapperType;
+
+		private BootstrapContext bootstrapContext;
+
+		private final TestContext testContext;
+
+		private final Supplier<MergedContextConfiguration> mergedConfig;
+
+		private final List<TestExecutionListener> listeners;
+
+		private final boolean cached;
+
+		ResolvedBootstrapper(Class<? extends TestContextBootstrapper> bootstrapperType,
+				BootstrapContext bootstrapContext, TestContext testContext,
+				Supplier<MergedContextConfiguration> mergedConfig, List<TestExecutionListener> listeners,
+				boolean cached) {
+			this.bootstrapperType = bootstrapperType;
+			this.bootstrapContext = bootstrapContext;
+			this.testContext = testContext;
+			this.mergedConfig = mergedConfig;
+			this.listeners = listeners;
+			this.cached = cached;
+		}
+
+		/**
+		 * @return the type of the bootstrapper that resolved the configuration
+		 */
+		Class<? extends TestContextBootstrapper> getBootstrapperType() {
+			return bootstrapperType;
+		}
+
+		/**
+		 * @return whether the configuration was copied from another test class rather than resolved
+		 */
+		boolean isCached() {
+			return cached;
+		}
+
+		@Override
+		public void setBootstrapContext(BootstrapContext bootstrapContext) {
+			this.bootstrapContext = bootstrapContext;
+		}
+
+		@Override
+		public BootstrapContext getBootstrapContext() {
+			return bootstrapContext;
+		}
+
+		@Override
+		public TestContext buildTestContext() {
+			return testContext;
+		}
+
+		@Override
+		public MergedContextConfiguration buildMergedContextConfiguration() {
+			return mergedConfig.get();
+		}
+
+		@Override
+		public List<TestExecutionListener> getTestExecutionListeners() {
+			return listeners;
+		}
+	}
+
+}
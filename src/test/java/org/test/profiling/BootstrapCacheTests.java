@@ -0,0 +1,101 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextBootstrapper;
+import org.springframework.test.context.cache.DefaultCacheAwareContextLoaderDelegate;
+import org.springframework.test.context.support.DefaultTestContextBootstrapper;
+
+class BootstrapCacheTests {
+
+	private final BootstrapCache cache = new BootstrapCache(true);
+
+	@Test
+	void subclassesThatDeclareNothingShareTheResolutionOfTheirBase() {
+		BootstrapCache.ResolvedBootstrapper first = bootstrap(First.class);
+		BootstrapCache.ResolvedBootstrapper second = bootstrap(Second.class);
+		assertThat(first.isCached()).isFalse();
+		assertThat(second.isCached()).isTrue();
+		assertThat(second.getBootstrapperType()).isEqualTo(DefaultTestContextBootstrapper.class);
+		assertThat(second.buildMergedContextConfiguration()).isEqualTo(first.buildMergedContextConfiguration());
+		assertThat(second.buildMergedContextConfiguration().getTestClass()).isEqualTo(Second.class);
+		assertThat(second.buildTestContext().getTestClass()).isEqualTo(Second.class);
+		assertThat(second.getTestExecutionListeners()).extracting(Object::getClass)
+				.isEqualTo(first.getTestExecutionListeners().stream().map(Object::getClass).collect(Collectors.toList()));
+		assertThat(second.getTestExecutionListeners().get(0)).isNotSameAs(first.getTestExecutionListeners().get(0));
+	}
+
+	@Test
+	void subclassesThatDeclareConfigurationAreResolvedOnTheirOwn() {
+		bootstrap(First.class);
+		BootstrapCache.ResolvedBootstrapper profiled = bootstrap(Profiled.class);
+		assertThat(profiled.isCached()).isFalse();
+		assertThat(profiled.buildMergedContextConfiguration().getActiveProfiles()).containsExactly("profiled");
+	}
+
+	@Test
+	void bootstrappersThatBuildTheirOwnTestContextsAreNotCached() {
+		bootstrap(First.class, AttributeSettingBootstrapper.class);
+		BootstrapCache.ResolvedBootstrapper second = bootstrap(Second.class, AttributeSettingBootstrapper.class);
+		assertThat(second.isCached()).isFalse();
+		assertThat(second.buildTestContext().getAttribute("testClass")).isEqualTo(Second.class.getName());
+	}
+
+	private BootstrapCache.ResolvedBootstrapper bootstrap(Class<?> testClass) {
+		return bootstrap(testClass, DefaultTestContextBootstrapper.class);
+	}
+
+	private BootstrapCache.ResolvedBootstrapper bootstrap(Class<?> testClass,
+			Class<? extends TestContextBootstrapper> bootstrapperType) {
+		return cache.bootstrap(testClass, new DefaultCacheAwareContextLoaderDelegate(), (clazz, bootstrapContext) -> {
+			TestContextBootstrapper bootstrapper = BeanUtils.instantiateClass(bootstrapperType);
+			bootstrapper.setBootstrapContext(bootstrapContext);
+			return bootstrapper;
+		});
+	}
+
+	static class AttributeSettingBootstrapper extends DefaultTestContextBootstrapper {
+
+		@Override
+		public TestContext buildTestContext() {
+			TestContext testContext = super.buildTestContext();
+			testContext.setAttribute("testClass", testContext.getTestClass().getName());
+			return testContext;
+		}
+	}
+
+	@ContextConfiguration(classes = Config.class)
+	abstract static class Base {
+	}
+
+	static class First extends Base {
+
+		@org.junit.Test
+		public void test() {
+		}
+	}
+
+	static class Second extends Base {
+
+		@org.junit.Test
+		public void test() {
+		}
+	}
+
+	@ActiveProfiles("profiled")
+	static class Profiled extends Base {
+	}
+
+	@Configuration
+	static class Config {
+	}
+
+}
@@ -1,48 +1,82 @@
 package org.test.profiling;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.test.context.DefaultTestExecutionListenersPostProcessor;
+import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
 import org.springframework.test.context.TestContext;
 import org.springframework.test.context.TestExecutionListener;
 import org.springframework.test.context.transaction.AfterTransaction;
 import org.springframework.test.context.transaction.BeforeTransaction;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 
 public class CachingTransactionalTestExecutionListener extends TransactionalTestExecutionListener {
+
+	/**
+	 * Set to {@code true} to have the {@link PostProcessor} replace the {@link TransactionalTestExecutionListener} with
+	 * this listener.
+	 */
+	public static final String CACHING_ENABLED_PROPERTY = "profiling.listeners.caching-transactional.enabled";
+
+	/**
+	 * Comma separated names of default listeners that the {@link PostProcessor} drops.
+	 */
+	public static final String EXCLUDED_LISTENERS_PROPERTY = "profiling.listeners.exclude";
 	
 	//intentionally using the base class to keep the logger name the same as it was before.
 	private static final Log logger = LogFactory.getLog(TransactionalTestExecutionListener.class);
 	
 	/**
-	 * A cache of class -> methods annotated with BeforeTransaction.
+	 * The metadata of every test class, computed on first use and kept for as long as the class is. A
+	 * {@link ClassValue} needs no lock to read and grows with the suite, there is no eviction to tune.
 	 */
-	private static LruClassMethodCache beforeTransactionMethodCache = new LruClassMethodCache(4);
+	private static final ClassValue<TestClassMetadata> metadata = new ClassValue<TestClassMetadata>() {
 
-	/**
-	 * A cache of class -> methods annotated with AfterTransaction.
-	 */
-	private static LruClassMethodCache afterTransactionMethodCache = new LruClassMethodCache(4);
-	
+		@Override
+		protected TestClassMetadata computeValue(Class<?> testClass) {
+			metadataStatistics.misses.increment();
+			return new TestClassMetadata(testClass);
+		}
+	};
+
+	private static final CacheStatistics metadataStatistics = new CacheStatistics();
+
+	private static final CacheStatistics transactionManagerStatistics = new CacheStatistics();
 
-	
 	/**
 	 * Profiling of the TransactionalTestExecutionListener shows a hotspot in both the runBeforerTransactionalMethods.
 	 * 
-	 * Using LRU cache (for the annotated before/after methods to see if this helps reduce calls within the hotspot.
+	 * Caching the annotated before/after methods per test class to see if this helps reduce calls within the hotspot.
+	 * The methods are invoked through method handles that are created once per class, rather than through
+	 * {@link Method#invoke}, which checks access and boxes its arguments on every call.
 	 * 
 	 * @param testContext the current test context
 	 */
@@ -50,41 +84,31 @@ public class CachingTransactionalTestExecutionListener extends TransactionalTest
 	protected void runBeforeTransactionMethods(TestContext testContext) throws Exception {
 
 		try {
-			List<Method> methods = getBeforeTransactionMethods(testContext.getTestClass());
-			for (Method method : methods) {
+			for (TransactionCallback callback : getMetadata(testContext.getTestClass()).beforeTransactionCallbacks) {
 				if (logger.isDebugEnabled()) {
-					logger.debug("Executing @BeforeTransaction method [" + method + "] for test context " + testContext);
+					logger.debug("Executing @BeforeTransaction method [" + callback.method + "] for test context " + testContext);
 				}
-				method.invoke(testContext.getTestInstance());
+				callback.invoke(testContext.getTestInstance());
 			}			
 		}
-		catch (InvocationTargetException ex) {
+		catch (Throwable ex) {
 			if (logger.isErrorEnabled()) {
 				logger.error("Exception encountered while executing @BeforeTransaction methods for test context " +
-						testContext + ".", ex.getTargetException());
+						testContext + ".", ex);
 			}
-			ReflectionUtils.rethrowException(ex.getTargetException());
+			ReflectionUtils.rethrowException(ex);
 		}
 	}
 
-	private List<Method> getBeforeTransactionMethods(Class<?> testClass) {
-		List<Method> methods = beforeTransactionMethodCache.get(testClass);
-		if (methods == null) {
-
-			methods = getAnnotatedMethods(testClass, BeforeTransaction.class);
-			Collections.reverse(methods);
-			for (Method method : methods) {
-				ReflectionUtils.makeAccessible(method);
-			}
-			beforeTransactionMethodCache.put(testClass, methods);
-		}
-		return methods;
+	List<Method> getBeforeTransactionMethods(Class<?> testClass) {
+		return getMetadata(testClass).beforeTransactionMethods;
 	}
 
 	/**
 	 * Profiling of the TransactionalTestExecutionListener shows a hotspot in both the runAfterTransactionalMethods.
 	 * 
-	 * Using LRU cache (for the annotated after methods to see if this helps reduce calls within the hotspot)
+	 * Caching the annotated after methods per test class to see if this helps reduce calls within the hotspot.
+	 * Every method runs even if an earlier one failed, the first exception is rethrown once all of them ran.
 	 * 
 	 * @param testContext the current test context
 	 */
@@ -92,28 +116,18 @@ public class CachingTransactionalTestExecutionListener extends TransactionalTest
 		protected void runAfterTransactionMethods(TestContext testContext) throws Exception {
 			Throwable afterTransactionException = null;
 	
-			List<Method> methods = getAfterTransactionMethods(testContext.getTestClass());
-			
-			for (Method method : methods) {			
+			for (TransactionCallback callback : getMetadata(testContext.getTestClass()).afterTransactionCallbacks) {
 				try {
 					if (logger.isDebugEnabled()) {
-						logger.debug("Executing @AfterTransaction method [" + method + "] for test context " + testContext);
-					}
-					method.invoke(testContext.getTestInstance());
-				}
-				catch (InvocationTargetException ex) {
-					Throwable targetException = ex.getTargetException();
-					if (afterTransactionException == null) {
-						afterTransactionException = targetException;
+						logger.debug("Executing @AfterTransaction method [" + callback.method + "] for test context " + testContext);
 					}
-					logger.error("Exception encountered while executing @AfterTransaction method [" + method +
-							"] for test context " + testContext, targetException);
+					callback.invoke(testContext.getTestInstance());
 				}
-				catch (Exception ex) {
+				catch (Throwable ex) {
 					if (afterTransactionException == null) {
 						afterTransactionException = ex;
 					}
-					logger.error("Exception encountered while executing @AfterTransaction method [" + method +
+					logger.error("Exception encountered while executing @AfterTransaction method [" + callback.method +
 							"] for test context " + testContext, ex);
 				}
 			}
@@ -123,74 +137,237 @@ public class CachingTransactionalTestExecutionListener extends TransactionalTest
 			}
 		}
 
-	private List<Method> getAfterTransactionMethods(Class<?> testClass) {
-		List<Method> methods = afterTransactionMethodCache.get(testClass);
-		if (methods == null) {
-			methods = getAnnotatedMethods( testClass, AfterTransaction.class);
-			for (Method method : methods) {			
-					ReflectionUtils.makeAccessible(method);
+	List<Method> getAfterTransactionMethods(Class<?> testClass) {
+		return getMetadata(testClass).afterTransactionMethods;
+	}
+
+	/**
+	 * The transaction manager only depends on the application context and the qualifier, so it is resolved once per
+	 * test class and qualifier and reused for as long as the test class runs against the same context.
+	 */
+	@Override
+	protected PlatformTransactionManager getTransactionManager(TestContext testContext, @Nullable String qualifier) {
+		ApplicationContext applicationContext = testContext.getApplicationContext();
+		Map<String, ResolvedTransactionManager> transactionManagers = getMetadata(testContext.getTestClass())
+				.transactionManagers;
+		String key = qualifier != null ? qualifier : "";
+		transactionManagerStatistics.lookups.increment();
+		ResolvedTransactionManager resolved = transactionManagers.get(key);
+		PlatformTransactionManager transactionManager = resolved != null ? resolved.get(applicationContext) : null;
+		if (transactionManager == null) {
+			transactionManagerStatistics.misses.increment();
+			transactionManager = super.getTransactionManager(testContext, qualifier);
+			if (transactionManager != null) {
+				transactionManagers.put(key, new ResolvedTransactionManager(applicationContext, transactionManager));
 			}
-			afterTransactionMethodCache.put( testClass, methods);
 		}
-		return methods;
+		return transactionManager;
 	}
-	
-	private List<Method> getAnnotatedMethods(Class<?> clazz, Class<? extends Annotation> annotationType) {
+
+	private static TestClassMetadata getMetadata(Class<?> testClass) {
+		metadataStatistics.lookups.increment();
+		return metadata.get(testClass);
+	}
+
+	/**
+	 * Register the hit and miss counts of the caches as {@code listener.cache} counters, tagged with the listener, the
+	 * cache and the result.
+	 */
+	static void bindCacheMetrics(MeterRegistry registry) {
+		metadataStatistics.bindTo(registry, "testClassMetadata");
+		transactionManagerStatistics.bindTo(registry, "transactionManager");
+	}
+
+	/**
+	 * @return the {@code @BeforeTransaction} methods of the test class, found by reflection, superclass methods first
+	 */
+	static List<Method> findBeforeTransactionMethods(Class<?> testClass) {
+		List<Method> beforeTransactionMethods = getAnnotatedMethods(testClass, BeforeTransaction.class);
+		Collections.reverse(beforeTransactionMethods);
+		return beforeTransactionMethods;
+	}
+
+	/**
+	 * @return the {@code @AfterTransaction} methods of the test class, found by reflection, subclass methods first
+	 */
+	static List<Method> findAfterTransactionMethods(Class<?> testClass) {
+		return getAnnotatedMethods(testClass, AfterTransaction.class);
+	}
+
+	private static List<Method> getAnnotatedMethods(Class<?> clazz, Class<? extends Annotation> annotationType) {
 		return Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(clazz, ReflectionUtils.USER_DECLARED_METHODS))
 				.filter(method -> AnnotatedElementUtils.hasAnnotation(method, annotationType))
 				.collect(Collectors.toList());
 	}
 
 	/**
-	 * Get all methods in the supplied {@link Class class} and its superclasses
-	 * which are annotated with the supplied {@code annotationType} but
-	 * which are not <em>shadowed</em> by methods overridden in subclasses.
-	 * <p>Default methods on interfaces are also detected.
-	 * @param clazz the class for which to retrieve the annotated methods
-	 * @param annotationType the annotation type for which to search
-	 * @return all annotated methods in the supplied class and its superclasses
-	 * as well as annotated interface default methods
+	 * Rewrites the default listeners of every test class that does not declare its own with
+	 * {@code @TestExecutionListeners}, driven by system properties:
+	 *
+	 * <ul>
+	 * <li>{@value #CACHING_ENABLED_PROPERTY} - {@code true} to replace the {@link TransactionalTestExecutionListener}
+	 * with this listener.</li>
+	 * <li>{@value #EXCLUDED_LISTENERS_PROPERTY} - comma separated simple or fully qualified names of listeners to drop,
+	 * for example {@code MockRestServiceServerResetTestExecutionListener,RestDocsTestExecutionListener}.</li>
+	 * </ul>
+	 *
+	 * Without either property the listeners are left alone. Every listener that was replaced or dropped is remembered,
+	 * so that the timing report can show what each change saved.
 	 */
 	static class PostProcessor implements DefaultTestExecutionListenersPostProcessor {
 
+		/**
+		 * Listener to the listener that replaced it, empty if it was dropped.
+		 */
+		private static final Map<Class<?>, Optional<Class<?>>> changes = new ConcurrentHashMap<>();
+
 		@Override
 		public Set<Class<? extends TestExecutionListener>> postProcessDefaultTestExecutionListeners(
 				Set<Class<? extends TestExecutionListener>> listeners) {
-//			Set<Class<? extends TestExecutionListener>> updated = new LinkedHashSet<>(listeners.size());
-//			for (Class<? extends TestExecutionListener> listener : listeners) {
-//				if (listener.getSimpleName().equals("MockRestServiceServerResetTestExecutionListener")
-//						|| listener.getSimpleName().equals("RestDocsTestExecutionListener")) {
-//					continue;
-//				}
-//				updated.add(listener.equals(TransactionalTestExecutionListener.class)
-//						? CachingTransactionalTestExecutionListener.class : listener);
-//			}
-//			return updated;
-			return listeners;
+			boolean caching = Boolean.getBoolean(CACHING_ENABLED_PROPERTY);
+			Set<String> excluded = StringUtils.commaDelimitedListToSet(
+					StringUtils.trimAllWhitespace(System.getProperty(EXCLUDED_LISTENERS_PROPERTY, "")));
+			Set<Class<? extends TestExecutionListener>> updated = new LinkedHashSet<>(listeners.size());
+			for (Class<? extends TestExecutionListener> listener : listeners) {
+				if (excluded.contains(listener.getSimpleName()) || excluded.contains(listener.getName())) {
+					changes.put(listener, Optional.empty());
+				}
+				else if (caching && listener.equals(TransactionalTestExecutionListener.class)) {
+					changes.put(listener, Optional.of(CachingTransactionalTestExecutionListener.class));
+					updated.add(CachingTransactionalTestExecutionListener.class);
+				}
+				else {
+					updated.add(listener);
+				}
+			}
+			return updated;
+		}
+
+		/**
+		 * @return the simple name of every listener that was replaced or dropped so far, mapped to the simple name of
+		 * its replacement, or empty if it was dropped
+		 */
+		static Map<String, Optional<String>> getChanges() {
+			Map<String, Optional<String>> simpleNames = new TreeMap<>();
+			changes.forEach((listener, replacement) -> simpleNames.put(listener.getSimpleName(),
+					replacement.map(Class::getSimpleName)));
+			return simpleNames;
 		}
 	}
 
-	
-	private static class LruClassMethodCache extends LinkedHashMap<Class<?>, List<Method>> {
+	/**
+	 * What the listener needs to know about a test class, beyond what Spring's own
+	 * {@code AnnotationTransactionAttributeSource} already caches per method.
+	 */
+	private static class TestClassMetadata {
+
+		private final List<Method> beforeTransactionMethods;
+
+		private final List<Method> afterTransactionMethods;
 
 		/**
-		 * Create a new {@code LruCache} with the supplied initial capacity
-		 * and load factor.
-		 * @param initialCapacity the initial capacity
-		 * @param loadFactor the load factor
+		 * Qualifier, empty for the default one, to the transaction manager it resolved to.
 		 */
-		LruClassMethodCache(int initialCapacity) {
-			super(initialCapacity);
+		private final Map<String, ResolvedTransactionManager> transactionManagers = new ConcurrentHashMap<>(4);
+
+		private final List<TransactionCallback> beforeTransactionCallbacks;
+
+		private final List<TransactionCallback> afterTransactionCallbacks;
+
+		TestClassMetadata(Class<?> testClass) {
+			List<Method> beforeTransactionMethods = LifecycleMetadataIndex.getBeforeTransactionMethods(testClass);
+			if (beforeTransactionMethods == null) {
+				beforeTransactionMethods = findBeforeTransactionMethods(testClass);
+			}
+			List<Method> afterTransactionMethods = LifecycleMetadataIndex.getAfterTransactionMethods(testClass);
+			if (afterTransactionMethods == null) {
+				afterTransactionMethods = findAfterTransactionMethods(testClass);
+			}
+			this.beforeTransactionMethods = Collections.unmodifiableList(beforeTransactionMethods);
+			this.afterTransactionMethods = Collections.unmodifiableList(afterTransactionMethods);
+			this.beforeTransactionCallbacks = beforeTransactionMethods.stream().map(TransactionCallback::new)
+					.collect(Collectors.toList());
+			this.afterTransactionCallbacks = afterTransactionMethods.stream().map(TransactionCallback::new)
+					.collect(Collectors.toList());
 		}
+	}
 
-		@Override
-		protected boolean removeEldestEntry(Map.Entry<Class<?>, List<Method>> eldest) {
-			if (size() > 4) {
-				return true;
-			} else {
-				return false;
+	/**
+	 * A {@code @BeforeTransaction} or {@code @AfterTransaction} method and a method handle that invokes it on a test
+	 * instance. The handle is adapted to take the instance as an {@code Object} and to return nothing, so every method
+	 * is invoked exactly the same way. Exceptions thrown by the method are not wrapped.
+	 */
+	private static class TransactionCallback {
+
+		private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class);
+
+		private final Method method;
+
+		private final MethodHandle methodHandle;
+
+		TransactionCallback(Method method) {
+			this.method = method;
+			ReflectionUtils.makeAccessible(method);
+			try {
+				MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+				if (Modifier.isStatic(method.getModifiers())) {
+					methodHandle = MethodHandles.dropArguments(methodHandle, 0, Object.class);
+				}
+				this.methodHandle = methodHandle.asType(INVOKER_TYPE);
+			}
+			catch (IllegalAccessException ex) {
+				throw new IllegalStateException("Cannot create a method handle for " + method, ex);
 			}
 		}
+
+		void invoke(Object testInstance) throws Throwable {
+			methodHandle.invokeExact(testInstance);
+		}
 	}
-	
+
+	/**
+	 * A transaction manager and the application context it came from. Both are held weakly, so that the cache does not
+	 * keep a closed context, or its data source, from being collected.
+	 */
+	private static class ResolvedTransactionManager {
+
+		private final WeakReference<ApplicationContext> applicationContext;
+
+		private final WeakReference<PlatformTransactionManager> transactionManager;
+
+		ResolvedTransactionManager(ApplicationContext applicationContext,
+				PlatformTransactionManager transactionManager) {
+			this.applicationContext = new WeakReference<>(applicationContext);
+			this.transactionManager = new WeakReference<>(transactionManager);
+		}
+
+		/**
+		 * @return the transaction manager, {@code null} if it was resolved from another context or has been collected
+		 */
+		@Nullable
+		PlatformTransactionManager get(ApplicationContext applicationContext) {
+			return this.applicationContext.get() == applicationContext ? this.transactionManager.get() : null;
+		}
+	}
+
+	/**
+	 * Lookup and miss counts of a cache, the hits are the difference.
+	 */
+	private static class CacheStatistics {
+
+		private final LongAdder lookups = new LongAdder();
+
+		private final LongAdder misses = new LongAdder();
+
+		void bindTo(MeterRegistry registry, String cache) {
+			Tags tags = Tags.of("listener", CachingTransactionalTestExecutionListener.class.getSimpleName(), "cache",
+					cache);
+			FunctionCounter
+					.builder("listener.cache", this, statistics -> statistics.lookups.sum() - statistics.misses.sum())
+					.tags(tags).tag("result", "hit").register(registry);
+			FunctionCounter.builder("listener.cache", this, statistics -> statistics.misses.sum())
+					.tags(tags).tag("result", "miss").register(registry);
+		}
+	}
+
 }
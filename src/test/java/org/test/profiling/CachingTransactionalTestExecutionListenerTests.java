@@ -0,0 +1,88 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.test.context.transaction.BeforeTransaction;
+
+class CachingTransactionalTestExecutionListenerTests {
+
+	private final CachingTransactionalTestExecutionListener listener = new CachingTransactionalTestExecutionListener();
+
+	@Test
+	void beforeTransactionMethodsRunSuperclassFirst() throws Exception {
+		Child child = new Child();
+		listener.runBeforeTransactionMethods(testContext(child));
+		assertThat(child.invoked).containsExactly("parentBefore", "childBefore");
+	}
+
+	@Test
+	void beforeTransactionMethodFailureIsRethrownUnwrapped() {
+		Failing failing = new Failing();
+		assertThatThrownBy(() -> listener.runBeforeTransactionMethods(testContext(failing)))
+				.isInstanceOf(IOException.class).hasMessage("before");
+	}
+
+	@Test
+	void afterTransactionMethodsAllRunAndTheFirstFailureIsRethrown() {
+		Child child = new Child();
+		assertThatThrownBy(() -> listener.runAfterTransactionMethods(testContext(child)))
+				.isInstanceOf(AssertionError.class).hasMessage("childAfter");
+		assertThat(child.invoked).containsExactly("childAfter", "parentAfter");
+	}
+
+	private static TestContext testContext(Object testInstance) {
+		TestContext testContext = mock(TestContext.class);
+		given(testContext.getTestClass()).willAnswer(invocation -> testInstance.getClass());
+		given(testContext.getTestInstance()).willReturn(testInstance);
+		return testContext;
+	}
+
+	static class Parent {
+
+		final List<String> invoked = new ArrayList<>();
+
+		@BeforeTransaction
+		void parentBefore() {
+			invoked.add("parentBefore");
+		}
+
+		@AfterTransaction
+		String parentAfter() {
+			invoked.add("parentAfter");
+			throw new IllegalStateException("parentAfter");
+		}
+	}
+
+	static class Child extends Parent {
+
+		@BeforeTransaction
+		private void childBefore() {
+			invoked.add("childBefore");
+		}
+
+		@AfterTransaction
+		void childAfter() {
+			invoked.add("childAfter");
+			throw new AssertionError("childAfter");
+		}
+	}
+
+	static class Failing {
+
+		@BeforeTransaction
+		void before() throws IOException {
+			throw new IOException("before");
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.test.profiling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.TestContext;
+
+/**
+ * Streams every lifecycle span to a file in the Chrome Trace Event format, which Perfetto
+ * ({@code https://ui.perfetto.dev}) and {@code chrome://tracing} can open. Unlike the aggregated timers, the timeline
+ * shows ordering effects such as a context reload halfway through a class or a slow first test.
+ *
+ * <p>Every span is written as a complete ({@code "ph":"X"}) event as soon as it ends, so memory use does not grow with
+ * the size of the suite. Test classes, context loads, listener callbacks and test bodies nest on the track of the
+ * thread they ran on, and every JVM is a process of its own, named after {@code profiling.trace.process-name}. The file
+ * is a JSON array with one event per line, the closing bracket is written when the JVM exits. The trace viewers
+ * accept the file without it, for example after a fork was killed.
+ */
+class ChromeTraceExporter implements LifecycleObserver {
+
+	private final Writer writer;
+
+	private final long pid = ProcessHandle.current().pid();
+
+	/**
+	 * The {@link System#nanoTime()} that the timestamps in the trace are relative to.
+	 */
+	private final long originNanos = System.nanoTime();
+
+	private final ThreadLocal<Boolean> threadNamed = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	private boolean first = true;
+
+	private boolean closed;
+
+	ChromeTraceExporter(Writer writer, String processName) {
+		this.writer = writer;
+		write(metadata("process_name", 0, processName));
+	}
+
+	/**
+	 * Create an instance that writes to {@code <processName>.json} in the output directory.
+	 */
+	static ChromeTraceExporter create(Path outputDirectory, String processName) throws IOException {
+		Files.createDirectories(outputDirectory);
+		BufferedWriter writer = Files.newBufferedWriter(outputDirectory.resolve(processName + ".json"));
+		writer.write("[");
+		return new ChromeTraceExporter(writer, processName);
+	}
+
+	@Override
+	public void testClassEnded(TestContext testContext, long startNanos, long endNanos) {
+		Class<?> testClass = testContext.getTestClass();
+		write(event(testClass.getSimpleName(), "testClass", startNanos, endNanos).append(",\"args\":{\"testClass\":\"")
+				.append(testClass.getName()).append("\"}}"));
+	}
+
+	@Override
+	public void contextLoadEnded(MergedContextConfiguration mergedContextConfiguration, long startNanos,
+			long endNanos) {
+		write(event("contextLoad", "contextLoad", startNanos, endNanos).append(",\"args\":{\"testClass\":\"")
+				.append(mergedContextConfiguration.getTestClass().getName()).append("\"}}"));
+	}
+
+	@Override
+	public void spanEnded(String phase, String listener, TestContext testContext, long startNanos, long endNanos) {
+		String testMethod = TimingTestContextManager.testMethodName(phase, testContext);
+		StringBuilder event = TEST_EXECUTION.equals(phase) ? event(testMethod, phase, startNanos, endNanos)
+				: event(listener + "." + phase, phase, startNanos, endNanos);
+		event.append(",\"args\":{\"testClass\":\"").append(testContext.getTestClass().getName());
+		if (testMethod != null) {
+			event.append("\",\"testMethod\":\"").append(testMethod);
+		}
+		write(event.append("\"}}"));
+	}
+
+	private StringBuilder event(String name, String category, long startNanos, long endNanos) {
+		if (!threadNamed.get()) {
+			threadNamed.set(Boolean.TRUE);
+			Thread thread = Thread.currentThread();
+			write(metadata("thread_name", thread.getId(), thread.getName()));
+		}
+		StringBuilder event = new StringBuilder(256).append("{\"name\":\"").append(name)
+				.append("\",\"cat\":\"").append(category).append("\",\"ph\":\"X\",\"ts\":");
+		appendMicros(event, startNanos - originNanos);
+		event.append(",\"dur\":");
+		appendMicros(event, endNanos - startNanos);
+		return event.append(",\"pid\":").append(pid).append(",\"tid\":").append(Thread.currentThread().getId());
+	}
+
+	private StringBuilder metadata(String name, long tid, String value) {
+		return new StringBuilder().append("{\"name\":\"").append(name).append("\",\"ph\":\"M\",\"pid\":").append(pid)
+				.append(",\"tid\":").append(tid).append(",\"args\":{\"name\":\"").append(value.replace("\"", "'"))
+				.append("\"}}");
+	}
+
+	/**
+	 * The trace format wants microseconds, append them with three decimals rather than going through a double.
+	 */
+	private static void appendMicros(StringBuilder builder, long nanos) {
+		long fraction = Math.abs(nanos % 1000);
+		builder.append(nanos / 1000).append('.');
+		if (fraction < 100) {
+			builder.append(fraction < 10 ? "00" : "0");
+		}
+		builder.append(fraction);
+	}
+
+	private synchronized void write(CharSequence event) {
+		if (closed) {
+			return;
+		}
+		try {
+			writer.append(first ? "\n" : ",\n").append(event);
+			first = false;
+		} catch (IOException e) {
+			closed = true;
+			System.err.println("Unable to write the trace, stopped tracing: " + e);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writer.write("\n]\n");
+			writer.close();
+		} catch (IOException e) {
+			System.err.println("Unable to close the trace: " + e);
+		}
+	}
+
+}
@@ -0,0 +1,265 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.test.context.transaction.BeforeTransaction;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Hammers the listener caches and the instrumentation from as many threads as there are cores, at least two, the way
+ * a suite running test classes and methods in parallel would, and checks that nothing is lost, counted twice or mixed
+ * up between threads. How the recording scales with the threads is measured by the {@code RecordingScalability} JMH
+ * runner, not here.
+ */
+class ConcurrentInstrumentationTests {
+
+	private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final String[] PHASES = { "beforeTestMethod", "afterTestMethod" };
+
+	private static final String[] LISTENERS = { "FirstListener", "SecondListener", "ThirdListener" };
+
+	/**
+	 * Classes that share their superclasses, so that threads computing and reading the per-class metadata at the same
+	 * time would hand out the methods of a sibling if the entries were mixed up.
+	 */
+	private static final List<Class<?>> TEST_CLASSES = Arrays.asList(A1.class, A2.class, A3.class, A4.class, A5.class,
+			A6.class, B1.class, B2.class, B3.class, B4.class, B5.class, B6.class, C1.class, C2.class, C3.class,
+			C4.class, C5.class, C6.class);
+
+	@Test
+	void transactionMethodCachesReturnTheMethodsOfTheRequestedClass() throws Exception {
+		CachingTransactionalTestExecutionListener listener = new CachingTransactionalTestExecutionListener();
+		runConcurrently(THREADS * 2, thread -> {
+			for (int i = 0; i < 20_000; i++) {
+				Class<?> testClass = TEST_CLASSES.get((i * 7 + thread) % TEST_CLASSES.size());
+				String base = testClass.getSimpleName().substring(0, 1);
+				assertThat(names(listener.getBeforeTransactionMethods(testClass)))
+						.containsExactly("beforeBase", "before" + base);
+				assertThat(names(listener.getAfterTransactionMethods(testClass)))
+						.containsExactly("after" + base);
+			}
+		});
+	}
+
+	/**
+	 * Every test class runs against two contexts that each hold a default and a qualified transaction manager, so a
+	 * thread would be handed the manager of the other context or qualifier if the entries of a class were mixed up, or
+	 * if one thread replaced the entry another had just read.
+	 */
+	@Test
+	void transactionManagerCacheReturnsTheManagerOfTheRequestedContextAndQualifier() throws Exception {
+		CachingTransactionalTestExecutionListener listener = new CachingTransactionalTestExecutionListener();
+		String[] qualifiers = { null, "other" };
+		GenericApplicationContext[] contexts = { transactionManagers(), transactionManagers() };
+		List<TestContext> testContexts = new ArrayList<>();
+		for (Class<?> testClass : TEST_CLASSES) {
+			for (GenericApplicationContext context : contexts) {
+				TestContext testContext = mock(TestContext.class);
+				given(testContext.getTestClass()).willAnswer(invocation -> testClass);
+				given(testContext.getApplicationContext()).willReturn(context);
+				testContexts.add(testContext);
+			}
+		}
+		try {
+			runConcurrently(THREADS * 2, thread -> {
+				for (int i = 0; i < 20_000; i++) {
+					TestContext testContext = testContexts.get((i * 7 + thread) % testContexts.size());
+					String qualifier = qualifiers[(i / 3 + thread) % qualifiers.length];
+					assertThat(listener.getTransactionManager(testContext, qualifier))
+							.isSameAs(testContext.getApplicationContext().getBean(
+									qualifier != null ? qualifier : "transactionManager", PlatformTransactionManager.class));
+				}
+			});
+		} finally {
+			for (GenericApplicationContext context : contexts) {
+				context.close();
+			}
+		}
+	}
+
+	@Test
+	void ringBufferRecorderKeepsEverySampleOfEveryThread() throws Exception {
+		int samplesPerThread = 30_000;
+		for (int threads = 1; threads <= THREADS; threads++) {
+			SimpleMeterRegistry registry = new SimpleMeterRegistry();
+			record(new RingBufferRecorder(new MeterRecorder(registry), samplesPerThread), threads, samplesPerThread);
+
+			for (String phase : PHASES) {
+				long count = registry.find(phase).timers().stream().mapToLong(Timer::count).sum();
+				double total = registry.find(phase).timers().stream()
+						.mapToDouble(timer -> timer.totalTime(TimeUnit.NANOSECONDS)).sum();
+				assertThat(count).isEqualTo((long) threads * samplesPerThread / PHASES.length);
+				long expectedTotal = 0;
+				for (int thread = 0; thread < threads; thread++) {
+					expectedTotal += (1000L + thread) * samplesPerThread / PHASES.length;
+				}
+				assertThat(total).isEqualTo((double) expectedTotal);
+			}
+		}
+	}
+
+	/**
+	 * Every thread ends spans {@code [i * 1000, i * 1000 + 1000)} while another thread reports pauses
+	 * {@code [i * 1000 + 500, i * 1000 + 750)}, so every span overlaps exactly one pause by 250ns, no matter which of the
+	 * two is reported first.
+	 */
+	@Test
+	void gcPauseAttributionCountsEveryPauseOncePerSpan() throws Exception {
+		int spans = 60;
+		for (int run = 0; run < 50; run++) {
+			SimpleMeterRegistry registry = new SimpleMeterRegistry();
+			GcPauseAttribution attribution = new GcPauseAttribution(registry);
+			runConcurrently(THREADS + 1, thread -> {
+				for (int i = 0; i < spans; i++) {
+					if (thread == THREADS) {
+						attribution.pauseEnded(i * 1000L + 500, i * 1000L + 750);
+					} else {
+						attribution.spanEnded("beforeTestMethod", LISTENERS[thread % LISTENERS.length], null, i * 1000L,
+								i * 1000L + 1000);
+					}
+				}
+			});
+			attribution.close();
+
+			double gcTotal = registry.find("beforeTestMethod.gc").timers().stream()
+					.mapToDouble(timer -> timer.totalTime(TimeUnit.NANOSECONDS)).sum();
+			long spanCount = registry.find("beforeTestMethod.excluding-gc").timers().stream()
+					.mapToLong(Timer::count).sum();
+			assertThat(spanCount).isEqualTo((long) THREADS * spans);
+			assertThat(gcTotal).isEqualTo(250d * THREADS * spans);
+		}
+	}
+
+	private static void record(RingBufferRecorder recorder, int threads, int samplesPerThread)
+			throws InterruptedException {
+		runConcurrently(threads, thread -> {
+			for (int i = 0; i < samplesPerThread; i++) {
+				recorder.record(PHASES[i % PHASES.length], LISTENERS[(i + thread) % LISTENERS.length], i,
+						1000 + thread, -1, -1);
+			}
+		});
+		recorder.close();
+	}
+
+	private static GenericApplicationContext transactionManagers() {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.getBeanFactory().registerSingleton("transactionManager", mock(PlatformTransactionManager.class));
+		context.getBeanFactory().registerSingleton("other", mock(PlatformTransactionManager.class));
+		context.refresh();
+		return context;
+	}
+
+	private static List<String> names(List<Method> methods) {
+		return methods.stream().map(Method::getName).collect(Collectors.toList());
+	}
+
+	private static void runConcurrently(int threads, ThreadBody body) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Throwable> failures = new ArrayList<>();
+		List<Thread> started = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			int thread = i;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+					body.run(thread);
+				} catch (Throwable ex) {
+					synchronized (failures) {
+						failures.add(ex);
+					}
+				}
+			});
+			worker.start();
+			started.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : started) {
+			worker.join();
+		}
+		assertThat(failures).isEmpty();
+	}
+
+	@FunctionalInterface
+	private interface ThreadBody {
+
+		void run(int thread) throws Exception;
+	}
+
+	static class Base {
+
+		@BeforeTransaction
+		void beforeBase() {
+		}
+	}
+
+	static class A extends Base {
+
+		@BeforeTransaction
+		void beforeA() {
+		}
+
+		@AfterTransaction
+		void afterA() {
+		}
+	}
+
+	static class B extends Base {
+
+		@BeforeTransaction
+		void beforeB() {
+		}
+
+		@AfterTransaction
+		void afterB() {
+		}
+	}
+
+	static class C extends Base {
+
+		@BeforeTransaction
+		void beforeC() {
+		}
+
+		@AfterTransaction
+		void afterC() {
+		}
+	}
+
+	static class A1 extends A {}
+	static class A2 extends A {}
+	static class A3 extends A {}
+	static class A4 extends A {}
+	static class A5 extends A {}
+	static class A6 extends A {}
+	static class B1 extends B {}
+	static class B2 extends B {}
+	static class B3 extends B {}
+	static class B4 extends B {}
+	static class B5 extends B {}
+	static class B6 extends B {}
+	static class C1 extends C {}
+	static class C2 extends C {}
+	static class C3 extends C {}
+	static class C4 extends C {}
+	static class C5 extends C {}
+	static class C6 extends C {}
+
+}
@@ -0,0 +1,200 @@
+package org.test.profiling;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Closes the application contexts that are still cached when the JVM exits and records how long each of them took in
+ * the {@value TimingTestContextManager#CONTEXT_CLOSE} phase, and how long closing all of them took as
+ * {@value TimingTestContextManager#SHUTDOWN} {@value TimingTestContextManager#CLOSE_CONTEXTS}.
+ *
+ * <p>Spring Boot registers a shutdown hook for every context it loads, and the JVM runs those hooks alongside the one
+ * that prints the timing report, so nothing measured them. The hooks of the contexts loaded through a
+ * {@link TimingContextLoaderDelegate} are therefore removed again and the contexts are closed from the report's hook
+ * instead, before the report is printed. They are closed on a bounded number of threads, one by default, and the hook
+ * stops waiting for them after a timeout, leaving whatever is still closing to the JVM's exit. A context is closed
+ * only after the contexts below it in a hierarchy, the contexts of one level are independent of each other.
+ */
+class ContextCloser {
+
+	private static final Log logger = LogFactory.getLog(ContextCloser.class);
+
+	private static final Field shutdownHookField = ReflectionUtils.findField(AbstractApplicationContext.class,
+			"shutdownHook");
+
+	static {
+		if (shutdownHookField != null) {
+			ReflectionUtils.makeAccessible(shutdownHookField);
+		}
+	}
+
+	private final int threads;
+
+	private final Duration timeout;
+
+	private final MeterRegistry registry;
+
+	/**
+	 * The open contexts, in the order they were loaded in, to the name of the test class they were loaded for.
+	 */
+	private final Map<ConfigurableApplicationContext, String> contexts = new LinkedHashMap<>();
+
+	/**
+	 * @param threads how many contexts to close at the same time
+	 * @param timeout how long to wait for all contexts to be closed
+	 * @param registry the registry to count the closed contexts in
+	 */
+	ContextCloser(int threads, Duration timeout, MeterRegistry registry) {
+		this.threads = Math.max(1, threads);
+		this.timeout = timeout;
+		this.registry = registry;
+	}
+
+	/**
+	 * Take over closing a context that has just been loaded, unless it is closed before the JVM exits.
+	 * @param mergedContextConfiguration the configuration the context was loaded for
+	 * @param context the context
+	 */
+	void register(MergedContextConfiguration mergedContextConfiguration, ApplicationContext context) {
+		if (!(context instanceof ConfigurableApplicationContext)) {
+			return;
+		}
+		ConfigurableApplicationContext configurableContext = (ConfigurableApplicationContext) context;
+		if (shutdownHookField != null && context instanceof AbstractApplicationContext) {
+			Thread shutdownHook = (Thread) ReflectionUtils.getField(shutdownHookField, context);
+			if (shutdownHook != null) {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			}
+		}
+		synchronized (contexts) {
+			contexts.put(configurableContext, mergedContextConfiguration.getTestClass().getName());
+		}
+		configurableContext.addApplicationListener(new Unregister(configurableContext));
+	}
+
+	/**
+	 * Close the contexts that are still open and wait for them, up to the timeout.
+	 */
+	void close() {
+		Map<Integer, Map<ConfigurableApplicationContext, String>> levels = new TreeMap<>(
+				(depth, otherDepth) -> Integer.compare(otherDepth, depth));
+		synchronized (contexts) {
+			contexts.forEach((context, testClass) -> levels
+					.computeIfAbsent(depth(context), depth -> new LinkedHashMap<>()).put(context, testClass));
+		}
+		if (levels.isEmpty()) {
+			return;
+		}
+		long[] start = TimingTestContextManager.startSpan();
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "context-closer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		long deadline = System.nanoTime() + timeout.toNanos();
+		try {
+			for (Map<ConfigurableApplicationContext, String> level : levels.values()) {
+				List<Future<?>> closes = new ArrayList<>();
+				level.forEach((context, testClass) -> closes.add(executor.submit(() -> close(context, testClass))));
+				if (!await(closes, deadline)) {
+					break;
+				}
+			}
+		} finally {
+			executor.shutdown();
+			TimingTestContextManager.recordSpan(TimingTestContextManager.SHUTDOWN,
+					TimingTestContextManager.CLOSE_CONTEXTS, start);
+		}
+	}
+
+	private void close(ConfigurableApplicationContext context, String testClass) {
+		long[] start = TimingTestContextManager.startSpan();
+		try {
+			context.close();
+			registry.counter("context.close", "result", "closed").increment();
+		} catch (RuntimeException ex) {
+			registry.counter("context.close", "result", "failed").increment();
+			logger.warn("Failed to close the context of " + testClass, ex);
+		} finally {
+			TimingTestContextManager.recordSpan(TimingTestContextManager.CONTEXT_CLOSE, testClass, start);
+		}
+	}
+
+	/**
+	 * @return whether all closes finished before the deadline, the ones that did not are counted as timed out
+	 */
+	private boolean await(List<Future<?>> closes, long deadline) {
+		for (int i = 0; i < closes.size(); i++) {
+			try {
+				closes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException ex) {
+				long timedOut = closes.stream().filter(close -> !close.isDone()).count();
+				registry.counter("context.close", "result", "timed-out").increment(timedOut);
+				System.err.println(String.format("Gave up on closing %1$d application contexts after %2$dms",
+						timedOut, timeout.toMillis()));
+				return false;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException ex) {
+				// Failures are handled by the close itself.
+			}
+		}
+		return true;
+	}
+
+	private static int depth(ApplicationContext context) {
+		int depth = 0;
+		for (ApplicationContext parent = context.getParent(); parent != null; parent = parent.getParent()) {
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Forgets a context that is closed before the JVM exits, by a {@code @DirtiesContext} for example.
+	 */
+	private final class Unregister implements ApplicationListener<ContextClosedEvent> {
+
+		private final ConfigurableApplicationContext context;
+
+		Unregister(ConfigurableApplicationContext context) {
+			this.context = context;
+		}
+
+		@Override
+		public void onApplicationEvent(ContextClosedEvent event) {
+			if (event.getApplicationContext() == context) {
+				synchronized (contexts) {
+					contexts.remove(context);
+				}
+			}
+		}
+
+	}
+
+}
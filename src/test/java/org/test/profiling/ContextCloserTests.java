@@ -0,0 +1,106 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.context.MergedContextConfiguration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ContextCloserTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final List<String> closed = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger closing = new AtomicInteger();
+
+	private final AtomicInteger maxClosing = new AtomicInteger();
+
+	@Test
+	void closesOneContextAtATimeByDefault() {
+		ContextCloser contextCloser = new ContextCloser(1, Duration.ofSeconds(10), registry);
+		CountDownLatch allClosing = new CountDownLatch(3);
+		for (String name : new String[] { "first", "second", "third" }) {
+			register(contextCloser, context(name, null, allClosing));
+		}
+		contextCloser.close();
+		assertThat(closed).containsExactly("first", "second", "third");
+		assertThat(maxClosing).hasValue(1);
+		assertThat(registry.counter("context.close", "result", "closed").count()).isEqualTo(3);
+	}
+
+	@Test
+	void closesContextsOfOneLevelInParallel() {
+		ContextCloser contextCloser = new ContextCloser(3, Duration.ofSeconds(10), registry);
+		CountDownLatch allClosing = new CountDownLatch(3);
+		for (String name : new String[] { "first", "second", "third" }) {
+			register(contextCloser, context(name, null, allClosing));
+		}
+		contextCloser.close();
+		assertThat(closed).containsExactlyInAnyOrder("first", "second", "third");
+		assertThat(maxClosing).hasValue(3);
+		assertThat(registry.counter("context.close", "result", "closed").count()).isEqualTo(3);
+	}
+
+	@Test
+	void closesChildrenBeforeTheirParentAndSkipsContextsClosedAlready() {
+		ContextCloser contextCloser = new ContextCloser(2, Duration.ofSeconds(10), registry);
+		CountDownLatch allClosing = new CountDownLatch(2);
+		GenericApplicationContext parent = context("parent", null, allClosing);
+		GenericApplicationContext dirtied = context("dirtied", null, new CountDownLatch(1));
+		register(contextCloser, parent);
+		register(contextCloser, context("first child", parent, allClosing));
+		register(contextCloser, dirtied);
+		register(contextCloser, context("second child", parent, allClosing));
+		dirtied.close();
+		closed.clear();
+
+		contextCloser.close();
+		assertThat(closed).hasSize(3).endsWith("parent");
+		assertThat(closed.subList(0, 2)).containsExactlyInAnyOrder("first child", "second child");
+		assertThat(registry.counter("context.close", "result", "closed").count()).isEqualTo(3);
+	}
+
+	private void register(ContextCloser contextCloser, ApplicationContext context) {
+		contextCloser.register(new MergedContextConfiguration(ContextCloserTests.class, null, null, null, null),
+				context);
+	}
+
+	/**
+	 * @return a refreshed context that, when it is closed, waits briefly for the other contexts to be closing as well
+	 * and remembers how many were at the most
+	 */
+	private GenericApplicationContext context(String name, ApplicationContext parent, CountDownLatch allClosing) {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.setParent(parent);
+		context.refresh();
+		context.addApplicationListener((ApplicationListener<ContextClosedEvent>) event -> {
+			if (event.getApplicationContext() != context) {
+				return;
+			}
+			maxClosing.accumulateAndGet(closing.incrementAndGet(), Math::max);
+			allClosing.countDown();
+			try {
+				allClosing.await(200, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			closing.decrementAndGet();
+			closed.add(name);
+		});
+		return context;
+	}
+
+}
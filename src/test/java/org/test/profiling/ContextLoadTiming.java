@@ -0,0 +1,196 @@
+package org.test.profiling;
+
+import java.util.List;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ConfigurationClassPostProcessor;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.index.CandidateComponentsIndexLoader;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.test.context.ContextConfigurationAttributes;
+import org.springframework.test.context.ContextCustomizer;
+import org.springframework.test.context.ContextCustomizerFactory;
+import org.springframework.test.context.MergedContextConfiguration;
+
+/**
+ * Times the steps of the application context loads that go through a {@link TimingContextLoaderDelegate}, in the
+ * {@value TimingTestContextManager#CONTEXT_LOAD} phase:
+ *
+ * <ul>
+ * <li>{@code ConfigurationClassPostProcessor} - the component scan, together with the parsing of the configuration
+ * classes it finds and of the auto-configurations they import. {@code (index)} is appended when the scan reads the
+ * {@code META-INF/spring.components} index instead of the class path, see the {@code component-index} profile.</li>
+ * <li>{@code BeanFactoryPostProcessors} - the remaining bean definition work: the bean factory post-processors that
+ * run after the configuration classes are processed, such as the resolution of property placeholders.</li>
+ * <li>{@code refresh} - the rest of the refresh: the registration of the bean post-processors, the instantiation of
+ * the singletons and the start of the lifecycle beans, up to the {@link ContextRefreshedEvent}.</li>
+ * </ul>
+ *
+ * The configuration class processing is bracketed by a registry post-processor that is added to the context, which
+ * Spring calls before all the post-processors that are beans, and one that is registered as a bean and is
+ * {@link Ordered}, which Spring calls right after the {@code PriorityOrdered} {@link ConfigurationClassPostProcessor}.
+ * The refresh starts when Spring instantiates a {@link PriorityOrdered} bean post-processor, the first thing it does
+ * once all bean factory post-processors ran. The same points are the {@link StartupTimeline} milestones of the first
+ * context load.
+ * Registered through {@code META-INF/spring.factories}, so it adds the same customizer to every test context and does
+ * not split the context cache.
+ */
+class ContextLoadTiming implements ContextCustomizerFactory {
+
+	private static final ContextCustomizer customizer = new Customizer();
+
+	@Override
+	public ContextCustomizer createContextCustomizer(Class<?> testClass,
+			List<ContextConfigurationAttributes> configAttributes) {
+		return customizer;
+	}
+
+	private static final class Customizer implements ContextCustomizer {
+
+		@Override
+		public void customizeContext(ConfigurableApplicationContext context,
+				MergedContextConfiguration mergedConfig) {
+			if (TimingContextLoaderDelegate.isLoading()) {
+				boolean indexed = CandidateComponentsIndexLoader.loadIndex(context.getClassLoader()) != null;
+				Steps steps = new Steps();
+				context.addBeanFactoryPostProcessor(new ScanStart(indexed, steps));
+				context.addApplicationListener(new RefreshEnd(context, steps));
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj != null && obj.getClass() == getClass();
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+	}
+
+	/**
+	 * The spans of one context load that are still open.
+	 */
+	private static final class Steps {
+
+		long[] beanDefinitionsStart;
+
+		long[] refreshStart;
+
+	}
+
+	private static final class ScanStart implements BeanDefinitionRegistryPostProcessor {
+
+		private final String listener;
+
+		private final Steps steps;
+
+		ScanStart(boolean indexed, Steps steps) {
+			this.listener = ConfigurationClassPostProcessor.class.getSimpleName() + (indexed ? " (index)" : "");
+			this.steps = steps;
+		}
+
+		@Override
+		public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+			StartupTimeline.reached(StartupTimeline.Milestone.SCAN_STARTED);
+			long[] start = TimingTestContextManager.startSpan();
+			AbstractBeanDefinition scanEnd = BeanDefinitionBuilder
+					.genericBeanDefinition(ScanEnd.class, () -> new ScanEnd(listener, start, steps))
+					.setRole(BeanDefinition.ROLE_INFRASTRUCTURE).getBeanDefinition();
+			registry.registerBeanDefinition(ScanEnd.class.getName(), scanEnd);
+			AbstractBeanDefinition refreshStart = BeanDefinitionBuilder
+					.genericBeanDefinition(RefreshStart.class, () -> new RefreshStart(steps))
+					.setRole(BeanDefinition.ROLE_INFRASTRUCTURE).getBeanDefinition();
+			registry.registerBeanDefinition(RefreshStart.class.getName(), refreshStart);
+		}
+
+		@Override
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+		}
+
+	}
+
+	private static final class ScanEnd implements BeanDefinitionRegistryPostProcessor, Ordered {
+
+		private final String listener;
+
+		private final long[] start;
+
+		private final Steps steps;
+
+		ScanEnd(String listener, long[] start, Steps steps) {
+			this.listener = listener;
+			this.start = start;
+			this.steps = steps;
+		}
+
+		@Override
+		public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+			TimingTestContextManager.recordSpan(TimingTestContextManager.CONTEXT_LOAD, listener, start);
+			StartupTimeline.reached(StartupTimeline.Milestone.SCAN_ENDED);
+			steps.beanDefinitionsStart = TimingTestContextManager.startSpan();
+		}
+
+		@Override
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+		}
+
+		@Override
+		public int getOrder() {
+			return Ordered.HIGHEST_PRECEDENCE;
+		}
+
+	}
+
+	private static final class RefreshStart implements BeanPostProcessor, PriorityOrdered {
+
+		RefreshStart(Steps steps) {
+			if (steps.beanDefinitionsStart != null) {
+				TimingTestContextManager.recordSpan(TimingTestContextManager.CONTEXT_LOAD, "BeanFactoryPostProcessors",
+						steps.beanDefinitionsStart);
+			}
+			StartupTimeline.reached(StartupTimeline.Milestone.REFRESH_STARTED);
+			steps.refreshStart = TimingTestContextManager.startSpan();
+		}
+
+		@Override
+		public int getOrder() {
+			return Ordered.HIGHEST_PRECEDENCE;
+		}
+
+	}
+
+	private static final class RefreshEnd implements ApplicationListener<ContextRefreshedEvent> {
+
+		private final ConfigurableApplicationContext context;
+
+		private final Steps steps;
+
+		RefreshEnd(ConfigurableApplicationContext context, Steps steps) {
+			this.context = context;
+			this.steps = steps;
+		}
+
+		@Override
+		public void onApplicationEvent(ContextRefreshedEvent event) {
+			if (event.getApplicationContext() == context && steps.refreshStart != null) {
+				TimingTestContextManager.recordSpan(TimingTestContextManager.CONTEXT_LOAD, "refresh", steps.refreshStart);
+				steps.refreshStart = null;
+			}
+		}
+
+	}
+
+}
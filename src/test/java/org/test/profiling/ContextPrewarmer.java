@@ -0,0 +1,300 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Loads application contexts on a background thread, into the shared context cache, before the tests need them:
+ *
+ * <ul>
+ * <li>Pre-warming loads the contexts of the first test classes a JVM bootstraps, so that the first context load
+ * overlaps with the discovery of the remaining test classes and the construction of their runners instead of blocking
+ * the first test.</li>
+ * <li>Preloading loads the next context the suite is going to switch to while the test classes of the current one
+ * run. The test classes are expected to run in the order they ran in last time, read from an order file, or else in
+ * the order they are bootstrapped in, which is the run order for JUnit 4 suites. Only a bounded number of preloaded
+ * contexts that no test has asked for yet are kept alive at a time, and nothing is preloaded while the heap is fuller
+ * than a threshold.</li>
+ * </ul>
+ *
+ * <p>Spring loads contexts while holding the lock of the context cache, which would block the test thread on every
+ * context it asks for, cached or not, for as long as a background load runs. The background loads therefore run
+ * outside of the lock, see {@link TimingContextLoaderDelegate#loadContextInBackground}, and a test thread that asks for
+ * a context that is still being loaded in the background waits for that load through {@link #awaitPrewarm} rather
+ * than loading the context a second time. Test classes that declare {@link DirtiesContext} anywhere are left alone,
+ * their contexts may be closed before they are used.
+ *
+ * <p>The background loads are recorded in the {@value TimingTestContextManager#CONTEXT_LOAD} phase like every other
+ * load, but the {@link LifecycleObserver observers} are not told about them, they only expect calls from the test
+ * thread.
+ */
+class ContextPrewarmer {
+
+	private static final Log logger = LogFactory.getLog(ContextPrewarmer.class);
+
+	private final int maxContexts;
+
+	private final int maxPreloadedContexts;
+
+	private final double maxHeapUsage;
+
+	@Nullable
+	private final Path orderFile;
+
+	private final MeterRegistry registry;
+
+	/**
+	 * Resolves the configuration of a test class that has not been bootstrapped yet.
+	 */
+	private final Function<Class<?>, MergedContextConfiguration> resolver;
+
+	private final TimingContextLoaderDelegate contextLoaderDelegate;
+
+	private final Set<MergedContextConfiguration> submitted = new HashSet<>();
+
+	private final Map<MergedContextConfiguration, Future<?>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * The preloaded contexts that no test has asked for yet.
+	 */
+	private final Set<MergedContextConfiguration> unused = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The test classes in the order they are expected to run in.
+	 */
+	private final List<String> expectedOrder;
+
+	private final boolean orderRecorded;
+
+	private final List<String> startedOrder = new ArrayList<>();
+
+	private final Map<String, Supplier<MergedContextConfiguration>> configurations = new HashMap<>();
+
+	private ExecutorService executor;
+
+	/**
+	 * @param maxContexts how many distinct contexts to pre-warm, {@code 0} to pre-warm none
+	 * @param maxPreloadedContexts how many preloaded contexts may be alive before a test asks for them, {@code 0} to
+	 * preload none
+	 * @param maxHeapUsage the share of the maximum heap above which nothing is preloaded
+	 * @param orderFile the file to read the expected order of the test classes from and to write the order they ran in
+	 * to, {@code null} to expect them to run in the order they are bootstrapped in
+	 * @param contextCloser closes the loaded contexts when the JVM exits
+	 * @param registry the registry to count the loads in
+	 * @param resolver resolves the configuration of a test class that has not been bootstrapped yet
+	 */
+	ContextPrewarmer(int maxContexts, int maxPreloadedContexts, double maxHeapUsage, @Nullable Path orderFile,
+			ContextCloser contextCloser, MeterRegistry registry, Function<Class<?>, MergedContextConfiguration> resolver) {
+		this.maxContexts = maxContexts;
+		this.maxPreloadedContexts = maxPreloadedContexts;
+		this.maxHeapUsage = maxHeapUsage;
+		this.orderFile = orderFile;
+		this.registry = registry;
+		this.resolver = resolver;
+		this.contextLoaderDelegate = new TimingContextLoaderDelegate(new LifecycleObserver[0], this, contextCloser);
+		this.expectedOrder = readOrder(orderFile);
+		this.orderRecorded = !expectedOrder.isEmpty();
+	}
+
+	private static List<String> readOrder(@Nullable Path orderFile) {
+		if (orderFile == null || !Files.isReadable(orderFile)) {
+			return new ArrayList<>();
+		}
+		try {
+			return Files.readAllLines(orderFile).stream().map(String::trim).filter(line -> !line.isEmpty())
+					.collect(Collectors.toCollection(ArrayList::new));
+		} catch (IOException ex) {
+			System.err.println("Unable to read the test class order " + orderFile + ": " + ex);
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * A test class has been bootstrapped: remember its configuration for the preloading and pre-warm its context,
+	 * unless enough contexts were pre-warmed already.
+	 * @param testClass the test class
+	 * @param mergedContextConfiguration the configuration of its context, only built if it is needed
+	 */
+	synchronized void bootstrapped(Class<?> testClass, Supplier<MergedContextConfiguration> mergedContextConfiguration) {
+		configurations.put(testClass.getName(), memoize(mergedContextConfiguration));
+		if (maxPreloadedContexts > 0 && !orderRecorded) {
+			expectedOrder.add(testClass.getName());
+		}
+		if (submitted.size() < maxContexts && !dirtiesContext(testClass)) {
+			load(testClass, configuration(testClass), "context.prewarm");
+		}
+	}
+
+	/**
+	 * A test class is about to run: preload the context of the next test class that needs a different one, if it is
+	 * not loaded yet and the memory guards allow for it.
+	 * @param testClass the test class
+	 */
+	synchronized void testClassStarted(Class<?> testClass) {
+		if (maxPreloadedContexts == 0) {
+			return;
+		}
+		startedOrder.add(testClass.getName());
+		MergedContextConfiguration current = configuration(testClass);
+		for (int i = expectedOrder.indexOf(testClass.getName()) + 1; i > 0 && i < expectedOrder.size(); i++) {
+			Class<?> nextClass;
+			MergedContextConfiguration next;
+			try {
+				nextClass = ClassUtils.forName(expectedOrder.get(i), testClass.getClassLoader());
+				next = configuration(nextClass);
+			} catch (ClassNotFoundException | RuntimeException | LinkageError ex) {
+				// Recorded by an earlier run, but not a Spring test class in this one.
+				continue;
+			}
+			if (next.equals(current)) {
+				continue;
+			}
+			if (submitted.contains(next) || contextLoaderDelegate.isContextLoaded(next) || dirtiesContext(nextClass)) {
+				return;
+			}
+			if (unused.size() >= maxPreloadedContexts) {
+				registry.counter("context.preload", "result", "skipped-limit").increment();
+			} else if (heapUsage() > maxHeapUsage) {
+				registry.counter("context.preload", "result", "skipped-heap").increment();
+			} else {
+				unused.add(next);
+				load(nextClass, next, "context.preload");
+			}
+			return;
+		}
+	}
+
+	private void load(Class<?> testClass, MergedContextConfiguration configuration, String counter) {
+		if (!submitted.add(configuration)) {
+			return;
+		}
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "context-prewarmer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		FutureTask<Void> load = new FutureTask<>(() -> {
+			try {
+				contextLoaderDelegate.loadContextInBackground(configuration);
+				registry.counter(counter, "result", "loaded").increment();
+			} catch (Throwable ex) {
+				// The test class gets the same failure when it loads the context itself.
+				unused.remove(configuration);
+				registry.counter(counter, "result", "failed").increment();
+				logger.debug("Failed to load the context of " + testClass.getName() + " in the background", ex);
+			} finally {
+				inFlight.remove(configuration);
+			}
+		}, null);
+		inFlight.put(configuration, load);
+		executor.execute(load);
+	}
+
+	/**
+	 * Wait for the background load of a context, if there is one that has not finished yet. Called on the test thread
+	 * every time it asks for a context, so it does nothing more than two {@code isEmpty} checks once all background
+	 * loads are done and all preloaded contexts are used.
+	 * @param mergedContextConfiguration the configuration of the context
+	 */
+	void awaitPrewarm(MergedContextConfiguration mergedContextConfiguration) {
+		if (!unused.isEmpty()) {
+			unused.remove(mergedContextConfiguration);
+		}
+		if (inFlight.isEmpty()) {
+			return;
+		}
+		Future<?> load = inFlight.get(mergedContextConfiguration);
+		if (load == null) {
+			return;
+		}
+		try {
+			load.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			// Failures are handled by the load itself.
+		}
+	}
+
+	/**
+	 * Write the order the test classes ran in to the order file, for the next run to preload by.
+	 */
+	synchronized void close() {
+		if (orderFile == null || startedOrder.isEmpty()) {
+			return;
+		}
+		try {
+			if (orderFile.getParent() != null) {
+				Files.createDirectories(orderFile.getParent());
+			}
+			Files.write(orderFile, startedOrder);
+		} catch (IOException ex) {
+			System.err.println("Unable to write the test class order " + orderFile + ": " + ex);
+		}
+	}
+
+	private MergedContextConfiguration configuration(Class<?> testClass) {
+		return configurations.computeIfAbsent(testClass.getName(), name -> memoize(() -> resolver.apply(testClass)))
+				.get();
+	}
+
+	private static Supplier<MergedContextConfiguration> memoize(Supplier<MergedContextConfiguration> supplier) {
+		MergedContextConfiguration[] configuration = new MergedContextConfiguration[1];
+		return () -> {
+			if (configuration[0] == null) {
+				configuration[0] = supplier.get();
+			}
+			return configuration[0];
+		};
+	}
+
+	private static double heapUsage() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		return heap.getMax() > 0 ? (double) heap.getUsed() / heap.getMax() : 0;
+	}
+
+	private static boolean dirtiesContext(Class<?> testClass) {
+		if (AnnotatedElementUtils.hasAnnotation(testClass, DirtiesContext.class)) {
+			return true;
+		}
+		for (Method method : ReflectionUtils.getUniqueDeclaredMethods(testClass,
+				ReflectionUtils.USER_DECLARED_METHODS)) {
+			if (AnnotatedElementUtils.hasAnnotation(method, DirtiesContext.class)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
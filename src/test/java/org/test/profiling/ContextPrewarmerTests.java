@@ -0,0 +1,176 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.HierarchyMode;
+import org.springframework.test.context.ContextConfigurationAttributes;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.SmartContextLoader;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ContextPrewarmerTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final List<ApplicationContext> registered = new CopyOnWriteArrayList<>();
+
+	private final ContextCloser contextCloser = new ContextCloser(1, Duration.ofSeconds(10), registry) {
+
+		@Override
+		void register(MergedContextConfiguration mergedContextConfiguration, ApplicationContext context) {
+			registered.add(context);
+			super.register(mergedContextConfiguration, context);
+		}
+	};
+
+	private final CountingContextLoader contextLoader = new CountingContextLoader();
+
+	private final AtomicInteger resolved = new AtomicInteger();
+
+	private final ContextPrewarmer prewarmer = new ContextPrewarmer(1, 0, 1, null, contextCloser, registry,
+			testClass -> {
+				resolved.incrementAndGet();
+				return configuration(testClass);
+			});
+
+	private final TimingContextLoaderDelegate contextLoaderDelegate = new TimingContextLoaderDelegate(
+			new LifecycleObserver[0], prewarmer, contextCloser);
+
+	@AfterEach
+	void closeContexts() {
+		contextLoader.release.countDown();
+		for (Class<?> testClass : new Class<?>[] { Plain.class, DirtiesClass.class, DirtiesMethod.class }) {
+			if (contextLoaderDelegate.isContextLoaded(configuration(testClass))) {
+				contextLoaderDelegate.closeContext(configuration(testClass), HierarchyMode.EXHAUSTIVE);
+			}
+		}
+	}
+
+	@Test
+	void testThreadWaitsForTheBackgroundLoadInsteadOfLoadingAgain() throws Exception {
+		prewarmer.bootstrapped(Plain.class, () -> configuration(Plain.class));
+		assertThat(contextLoader.started.await(10, TimeUnit.SECONDS)).isTrue();
+
+		AtomicReference<ApplicationContext> loaded = new AtomicReference<>();
+		Thread testThread = new Thread(() -> loaded.set(contextLoaderDelegate.loadContext(configuration(Plain.class))));
+		testThread.start();
+		while (testThread.getState() != Thread.State.WAITING) {
+			assertThat(testThread.isAlive()).isTrue();
+			Thread.sleep(1);
+		}
+		assertThat(contextLoader.loads).hasValue(1);
+		contextLoader.release.countDown();
+		testThread.join();
+
+		assertThat(loaded.get()).isSameAs(contextLoader.lastLoaded.get());
+		assertThat(registered).containsExactly(loaded.get());
+		assertThat(contextLoader.loads).hasValue(1);
+		assertThat(registry.counter("context.prewarm", "result", "loaded").count()).isEqualTo(1);
+		contextCloser.close();
+		assertThat(contextLoader.lastLoaded.get().isActive()).isFalse();
+		assertThat(registry.counter("context.close", "result", "closed").count()).isEqualTo(1);
+	}
+
+	@Test
+	void backgroundLoadThatLosesTheRaceIsNotClosedAgainAtExit() throws Exception {
+		contextLoader.release.countDown();
+		ApplicationContext cached = contextLoaderDelegate.loadContext(configuration(Plain.class));
+		contextLoaderDelegate.loadContextInBackground(configuration(Plain.class));
+
+		assertThat(contextLoader.loads).hasValue(2);
+		assertThat(contextLoader.lastLoaded.get()).isNotSameAs(cached);
+		assertThat(contextLoader.lastLoaded.get().isActive()).isFalse();
+		assertThat(registered).containsExactly(cached);
+		assertThat(contextLoaderDelegate.loadContext(configuration(Plain.class))).isSameAs(cached);
+		contextCloser.close();
+		assertThat(registry.counter("context.close", "result", "closed").count()).isEqualTo(1);
+	}
+
+	@Test
+	void testClassesThatDirtyTheirContextAreNotPrewarmed() throws Exception {
+		contextLoader.release.countDown();
+		prewarmer.bootstrapped(DirtiesClass.class, () -> configuration(DirtiesClass.class));
+		prewarmer.bootstrapped(DirtiesMethod.class, () -> configuration(DirtiesMethod.class));
+		assertThat(resolved).hasValue(0);
+
+		prewarmer.bootstrapped(Plain.class, () -> configuration(Plain.class));
+		prewarmer.awaitPrewarm(configuration(Plain.class));
+		assertThat(contextLoader.loads).hasValue(1);
+		assertThat(contextLoaderDelegate.isContextLoaded(configuration(Plain.class))).isTrue();
+		assertThat(contextLoaderDelegate.isContextLoaded(configuration(DirtiesClass.class))).isFalse();
+		assertThat(contextLoaderDelegate.isContextLoaded(configuration(DirtiesMethod.class))).isFalse();
+	}
+
+	private MergedContextConfiguration configuration(Class<?> testClass) {
+		return new MergedContextConfiguration(testClass, null, new Class<?>[] { testClass }, null, contextLoader);
+	}
+
+	static class Plain {
+	}
+
+	@DirtiesContext
+	static class DirtiesClass {
+	}
+
+	static class DirtiesMethod {
+
+		@DirtiesContext
+		void test() {
+		}
+	}
+
+	/**
+	 * Loads an empty context once {@link #release} is counted down.
+	 */
+	static class CountingContextLoader implements SmartContextLoader {
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AtomicInteger loads = new AtomicInteger();
+
+		final AtomicReference<ConfigurableApplicationContext> lastLoaded = new AtomicReference<>();
+
+		@Override
+		public ApplicationContext loadContext(MergedContextConfiguration mergedConfig) throws Exception {
+			loads.incrementAndGet();
+			started.countDown();
+			release.await();
+			GenericApplicationContext context = new GenericApplicationContext();
+			context.refresh();
+			lastLoaded.set(context);
+			return context;
+		}
+
+		@Override
+		public void processContextConfiguration(ContextConfigurationAttributes configAttributes) {
+		}
+
+		@Override
+		public String[] processLocations(Class<?> clazz, String... locations) {
+			return locations;
+		}
+
+		@Override
+		public ApplicationContext loadContext(String... locations) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
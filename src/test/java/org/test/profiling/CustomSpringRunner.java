@@ -7,7 +7,12 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 public class CustomSpringRunner extends SpringJUnit4ClassRunner {
 
 	public CustomSpringRunner(Class<?> clazz) throws InitializationError {
-		super(clazz);
+		super(constructionStarted(clazz));
+	}
+
+	private static Class<?> constructionStarted(Class<?> clazz) {
+		StartupTimeline.reached(StartupTimeline.Milestone.RUNNER_CONSTRUCTION_STARTED);
+		return clazz;
 	}
 
 	@Override
@@ -0,0 +1,147 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Rebuilds the timing report of a fork from the event log that {@link MappedEventLog} wrote, for example after the
+ * fork crashed or was killed before its shutdown hook could print the report. Records are read up to the end record
+ * or, for a fork that did not exit normally, up to the first header that was never written. Records that were reserved
+ * but never finished are skipped and counted, the ones after them are still read.
+ *
+ * <p>The samples are replayed through a {@link MeterRecorder}, so the report has the same timers and columns as the one
+ * the fork would have printed. GC pauses are not in the log, so the corrected numbers only take the measurement floor
+ * out.
+ *
+ * <p>Usage: {@code EventLogReader <event log> [<csv report>]}, for example with
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.test.profiling.EventLogReader
+ * -Dexec.args="target/profiling/events/1234.events"}.
+ */
+public class EventLogReader {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MeterRecorder recorder = new MeterRecorder(registry);
+
+	private final List<String> phases = new ArrayList<>();
+
+	private final List<String> listeners = new ArrayList<>();
+
+	private final Set<Long> threadIds = new HashSet<>();
+
+	private long pid;
+
+	private long createdMillis;
+
+	private long measurementFloorNanos;
+
+	private long sampleCount;
+
+	private long unfinishedCount;
+
+	private boolean complete;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: EventLogReader <event log> [<csv report>]");
+			System.exit(2);
+		}
+		EventLogReader reader = new EventLogReader();
+		reader.read(Paths.get(args[0]));
+		reader.printSummary(args[0]);
+		TimingReport report = new TimingReport(reader.registry, Math.max(0, reader.measurementFloorNanos));
+		report.print();
+		if (args.length > 1) {
+			report.write(Paths.get(args[1]));
+		}
+	}
+
+	void read(Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (buffer.capacity() < MappedEventLog.FILE_HEADER_SIZE || buffer.getLong(0) != MappedEventLog.MAGIC) {
+			throw new IOException(file + " is not an event log");
+		}
+		if (buffer.getInt(8) != MappedEventLog.VERSION) {
+			throw new IOException(file + " is an event log of unsupported version " + buffer.getInt(8));
+		}
+		pid = buffer.getLong(16);
+		createdMillis = buffer.getLong(24);
+		measurementFloorNanos = buffer.getLong(MappedEventLog.MEASUREMENT_FLOOR_OFFSET);
+
+		int offset = buffer.getInt(12);
+		while (offset + 4 <= buffer.capacity()) {
+			int header = buffer.getInt(offset);
+			int type = header >>> 24;
+			int length = header & 0xffffff;
+			if (header == 0 || length < 4 || (length & 7) != 0 || offset + length > buffer.capacity()) {
+				// Nothing was written from here on.
+				return;
+			}
+			if (type == 0) {
+				// Reserved but never finished, its thread was still writing it when the fork died.
+				unfinishedCount++;
+			} else if (type == MappedEventLog.SAMPLE) {
+				readSample(buffer, offset);
+			} else if (type == MappedEventLog.NAME) {
+				readName(buffer, offset);
+			} else if (type == MappedEventLog.END) {
+				complete = true;
+				return;
+			}
+			offset += length;
+		}
+	}
+
+	private void readName(ByteBuffer buffer, int offset) {
+		byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(offset + 6))];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + 12 + i);
+		}
+		List<String> names = buffer.get(offset + 4) == MappedEventLog.PHASE_NAME ? phases : listeners;
+		int id = buffer.getInt(offset + 8);
+		while (names.size() <= id) {
+			names.add(null);
+		}
+		names.set(id, new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	private void readSample(ByteBuffer buffer, int offset) {
+		int ids = buffer.getInt(offset + 4);
+		threadIds.add(buffer.getLong(offset + 8));
+		recorder.record(phases.get(ids >>> 16), listeners.get(ids & 0xffff), buffer.getLong(offset + 16),
+				buffer.getLong(offset + 24), buffer.getLong(offset + 32), buffer.getLong(offset + 40));
+		sampleCount++;
+	}
+
+	private void printSummary(String file) {
+		System.out.println("------------------------------------------------------------------------------------------------");
+		System.out.println(String.format("Event log %1$s of pid %2$d, started %3$s: %4$d samples from %5$d threads, %6$s",
+				file, pid, Instant.ofEpochMilli(createdMillis), sampleCount, threadIds.size(),
+				complete ? "complete" : "TRUNCATED, the fork did not exit normally"));
+		if (unfinishedCount > 0) {
+			System.out.println(String.format("Skipped %1$d records that were never finished", unfinishedCount));
+		}
+		if (measurementFloorNanos >= 0) {
+			System.out.println(String.format("Measurement floor: %1$dns per callback", measurementFloorNanos));
+		} else {
+			System.out.println("Measurement floor: not calibrated yet, the timings are not corrected");
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.test.profiling;
+
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.TestContext;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits JDK Flight Recorder events for every listener callback, application context load and test body, so that a
+ * recording shows the Spring test lifecycle next to the allocation, lock, I/O and GC events of the JVM itself:
+ *
+ * <ul>
+ * <li>{@code org.test.profiling.ListenerCallback} - a callback of a {@code TestExecutionListener}.</li>
+ * <li>{@code org.test.profiling.ContextLoad} - an application context that was loaded because it was not in the
+ * context cache, reported with the callback that triggered it.</li>
+ * <li>{@code org.test.profiling.TestExecution} - the test method itself.</li>
+ * </ul>
+ *
+ * All of them carry the test class, test method, listener and phase. The test method is empty for the phases that run
+ * before a test method is known, {@code beforeTestClass} and {@code prepareTestInstance}.
+ *
+ * <p>Whether an event type is enabled is a static check on the event class, so unless a recording is running, for
+ * example one started with {@code -XX:StartFlightRecording}, no event is allocated and every callback costs a few
+ * branches.
+ */
+class FlightRecorderEvents implements LifecycleObserver {
+
+	private static final ListenerCallbackEvent LISTENER_CALLBACK = new ListenerCallbackEvent();
+
+	private static final ContextLoadEvent CONTEXT_LOAD = new ContextLoadEvent();
+
+	private static final TestExecutionEvent TEST_EXECUTION_EVENT = new TestExecutionEvent();
+
+	private final ThreadLocal<LifecycleEvent> currentCallback = new ThreadLocal<>();
+
+	private final ThreadLocal<LifecycleEvent> currentContextLoad = new ThreadLocal<>();
+
+	@Override
+	public void spanStarted(String phase, String listener, TestContext testContext) {
+		boolean testExecution = TEST_EXECUTION.equals(phase);
+		if (!(testExecution ? TEST_EXECUTION_EVENT.isEnabled() : LISTENER_CALLBACK.isEnabled())) {
+			return;
+		}
+		LifecycleEvent event = testExecution ? new TestExecutionEvent() : new ListenerCallbackEvent();
+		event.testClass = testContext.getTestClass();
+		event.testMethod = TimingTestContextManager.testMethodName(phase, testContext);
+		event.listener = listener;
+		event.phase = phase;
+		currentCallback.set(event);
+		event.begin();
+	}
+
+	@Override
+	public void spanEnded(String phase, String listener, TestContext testContext, long startNanos, long endNanos) {
+		commit(currentCallback);
+	}
+
+	@Override
+	public void contextLoadStarted(MergedContextConfiguration mergedContextConfiguration) {
+		if (!CONTEXT_LOAD.isEnabled()) {
+			return;
+		}
+		LifecycleEvent event = new ContextLoadEvent();
+		event.testClass = mergedContextConfiguration.getTestClass();
+		LifecycleEvent callback = currentCallback.get();
+		if (callback != null) {
+			event.testMethod = callback.testMethod;
+			event.listener = callback.listener;
+			event.phase = callback.phase;
+		}
+		currentContextLoad.set(event);
+		event.begin();
+	}
+
+	@Override
+	public void contextLoadEnded(MergedContextConfiguration mergedContextConfiguration, long startNanos,
+			long endNanos) {
+		commit(currentContextLoad);
+	}
+
+	private static void commit(ThreadLocal<LifecycleEvent> current) {
+		LifecycleEvent event = current.get();
+		if (event != null) {
+			current.remove();
+			event.end();
+			event.commit();
+		}
+	}
+
+	@Category({ "Spring Test", "Lifecycle" })
+	@StackTrace(false)
+	abstract static class LifecycleEvent extends Event {
+
+		@Label("Test Class")
+		Class<?> testClass;
+
+		@Label("Test Method")
+		String testMethod;
+
+		@Label("Listener")
+		String listener;
+
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("org.test.profiling.ListenerCallback")
+	@Label("Listener Callback")
+	@Description("A callback of a TestExecutionListener")
+	static class ListenerCallbackEvent extends LifecycleEvent {
+	}
+
+	@Name("org.test.profiling.ContextLoad")
+	@Label("Context Load")
+	@Description("An application context that was not in the context cache yet being loaded")
+	static class ContextLoadEvent extends LifecycleEvent {
+	}
+
+	@Name("org.test.profiling.TestExecution")
+	@Label("Test Execution")
+	@Description("The execution of a test method")
+	static class TestExecutionEvent extends LifecycleEvent {
+	}
+
+}
@@ -0,0 +1,288 @@
+package org.test.profiling;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.springframework.test.context.TestContext;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Attributes garbage collection pauses to the listener callbacks and test bodies they overlapped with.
+ *
+ * <p>The JVM reports a pause through a {@link GarbageCollectorMXBean} notification shortly after it ended, by which time
+ * the span it interrupted may or may not have ended too. So both the recent pauses and the recent spans are kept in
+ * small ring buffers, and whichever of the two arrives last does the attribution. A span is only recorded once it drops
+ * out of its ring buffer (or when the JVM exits), which gives late notifications time to arrive. For every span, two
+ * meters are recorded next to the wall-clock timer of {@link TimingTestContextManager}:
+ *
+ * <ul>
+ * <li>{@code <phase>.gc} - the GC pause time that overlapped the span, only recorded for spans that overlapped one.</li>
+ * <li>{@code <phase>.excluding-gc} - the span's duration minus the GC pause time, which the corrected numbers in the
+ * report are based on.</li>
+ * </ul>
+ *
+ * The JVM reports pause start and end times in milliseconds, so the attribution is only as precise as that.
+ *
+ * <p>Every test thread keeps its recent spans in a ring buffer of its own, guarded by a lock of its own, so test
+ * threads running in parallel do not contend with each other; only the notification thread visits all of them. The
+ * recent pauses are read without a lock: the number of reported pauses is published last, after the pause itself, and
+ * a test thread that finds it changed while reading the pauses reads them again. A pause is numbered when it is
+ * reported and every span remembers how many pauses it had already seen when it ended, so a pause is never counted
+ * twice, whichever side gets to it first.
+ *
+ * <p>Once a thread has ended more spans than its ring buffer holds, every new span records the one it evicts on the
+ * test thread. The ring buffer therefore keeps the phases and listeners as {@link Names} ids and caches the two timers
+ * per id pair, so recording an evicted span neither builds a meter nor looks one up in the registry.
+ */
+class GcPauseAttribution implements LifecycleObserver, NotificationListener {
+
+	private static final int SPAN_CAPACITY = 8192;
+
+	private static final int PAUSE_CAPACITY = 64;
+
+	private final MeterRegistry registry;
+
+	/**
+	 * {@link System#nanoTime()} at the time the JVM started, used to convert the pause times of {@link GcInfo}.
+	 */
+	private final long jvmStartNanos = System.nanoTime()
+			- TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+
+	private final Names phases = new Names();
+
+	private final Names listeners = new Names();
+
+	private final Queue<Spans> threadSpans = new ConcurrentLinkedQueue<>();
+
+	private final ThreadLocal<Spans> currentSpans = ThreadLocal.withInitial(this::register);
+
+	private final long[] pauseStarts = new long[PAUSE_CAPACITY];
+	private final long[] pauseEnds = new long[PAUSE_CAPACITY];
+	/**
+	 * The number of reported pauses, written after the pause it counts.
+	 */
+	private volatile long pauseCount;
+
+	/**
+	 * Only taken by the threads that report pauses, never by the test threads.
+	 */
+	private final Object pauseWriteLock = new Object();
+
+	GcPauseAttribution(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Create an instance that is subscribed to the notifications of all garbage collectors of this JVM.
+	 */
+	static GcPauseAttribution subscribe(MeterRegistry registry) {
+		GcPauseAttribution attribution = new GcPauseAttribution(registry);
+		for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (garbageCollector instanceof NotificationEmitter) {
+				((NotificationEmitter) garbageCollector).addNotificationListener(attribution, null, null);
+			}
+		}
+		return attribution;
+	}
+
+	private Spans register() {
+		Spans spans = new Spans();
+		threadSpans.add(spans);
+		return spans;
+	}
+
+	@Override
+	public void spanEnded(String phase, String listener, TestContext testContext, long startNanos, long endNanos) {
+		Spans spans = currentSpans.get();
+		// The notification thread takes the lock of the spans after publishing a pause, so it either finds this span
+		// in the ring buffer or the span has seen the pause.
+		synchronized (spans) {
+			long gcNanos;
+			long seenPauses;
+			do {
+				seenPauses = pauseCount;
+				gcNanos = pauseNanos(startNanos, endNanos, seenPauses);
+			} while (pauseCount != seenPauses);
+			spans.add(phases.idOf(phase), listeners.idOf(listener), startNanos, endNanos, gcNanos, seenPauses);
+		}
+	}
+
+	/**
+	 * Sum up the overlap of a span with the reported pauses, leaving out the oldest one in the ring buffer, which the
+	 * next pause overwrites before it is published.
+	 */
+	private long pauseNanos(long startNanos, long endNanos, long pauses) {
+		long gcNanos = 0;
+		for (long i = pauses - 1; i >= 0 && i > pauses - PAUSE_CAPACITY; i--) {
+			int index = (int) (i % PAUSE_CAPACITY);
+			if (pauseEnds[index] < startNanos) {
+				break;
+			}
+			gcNanos += overlap(startNanos, endNanos, pauseStarts[index], pauseEnds[index]);
+		}
+		return gcNanos;
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		if (isConcurrent(info.getGcName())) {
+			return;
+		}
+		GcInfo gcInfo = info.getGcInfo();
+		pauseEnded(jvmStartNanos + TimeUnit.MILLISECONDS.toNanos(gcInfo.getStartTime()),
+				jvmStartNanos + TimeUnit.MILLISECONDS.toNanos(gcInfo.getEndTime()));
+	}
+
+	void pauseEnded(long startNanos, long endNanos) {
+		long pause;
+		synchronized (pauseWriteLock) {
+			pause = pauseCount;
+			int index = (int) (pause % PAUSE_CAPACITY);
+			pauseStarts[index] = startNanos;
+			pauseEnds[index] = endNanos;
+			pauseCount = pause + 1;
+		}
+		for (Spans spans : threadSpans) {
+			synchronized (spans) {
+				spans.pauseEnded(pause, startNanos, endNanos);
+			}
+		}
+	}
+
+	/**
+	 * Record the spans that are still in the ring buffers.
+	 */
+	@Override
+	public void close() {
+		for (Spans spans : threadSpans) {
+			synchronized (spans) {
+				spans.close();
+			}
+		}
+	}
+
+	private static long overlap(long start1, long end1, long start2, long end2) {
+		return Math.max(0, Math.min(end1, end2) - Math.max(start1, start2));
+	}
+
+	/**
+	 * Collectors such as "G1 Concurrent GC" or "ZGC Cycles" report concurrent work that does not stop the test thread.
+	 */
+	private static boolean isConcurrent(String gcName) {
+		return gcName.contains("Concurrent") || gcName.contains("Cycles");
+	}
+
+	/**
+	 * The recent spans of one test thread, only accessed while holding its lock.
+	 */
+	private class Spans {
+
+		private final int[] phaseIds = new int[SPAN_CAPACITY];
+		private final int[] listenerIds = new int[SPAN_CAPACITY];
+		private final long[] starts = new long[SPAN_CAPACITY];
+		private final long[] ends = new long[SPAN_CAPACITY];
+		private final long[] gcNanos = new long[SPAN_CAPACITY];
+		/**
+		 * The number of pauses that had been reported when the span ended, those are included in its GC time.
+		 */
+		private final long[] seenPauses = new long[SPAN_CAPACITY];
+		private long count;
+
+		/**
+		 * The {@code <phase>.gc} and {@code <phase>.excluding-gc} timers by phase id and listener id.
+		 */
+		private Timer[][] gcTimers = new Timer[0][];
+		private Timer[][] excludingGcTimers = new Timer[0][];
+
+		void add(int phaseId, int listenerId, long startNanos, long endNanos, long gcNanos, long seenPauses) {
+			int index = (int) (count % SPAN_CAPACITY);
+			if (count >= SPAN_CAPACITY) {
+				record(index);
+			}
+			this.phaseIds[index] = phaseId;
+			this.listenerIds[index] = listenerId;
+			this.starts[index] = startNanos;
+			this.ends[index] = endNanos;
+			this.gcNanos[index] = gcNanos;
+			this.seenPauses[index] = seenPauses;
+			count++;
+		}
+
+		void pauseEnded(long pause, long startNanos, long endNanos) {
+			for (long i = count - 1; i >= 0 && i >= count - SPAN_CAPACITY; i--) {
+				int index = (int) (i % SPAN_CAPACITY);
+				if (ends[index] < startNanos) {
+					break;
+				}
+				if (seenPauses[index] <= pause) {
+					gcNanos[index] += overlap(starts[index], ends[index], startNanos, endNanos);
+				}
+			}
+		}
+
+		void close() {
+			for (long i = Math.max(0, count - SPAN_CAPACITY); i < count; i++) {
+				record((int) (i % SPAN_CAPACITY));
+			}
+			count = 0;
+		}
+
+		private void record(int index) {
+			long duration = ends[index] - starts[index];
+			long gc = Math.min(gcNanos[index], duration);
+			int phaseId = phaseIds[index];
+			int listenerId = listenerIds[index];
+			if (gc > 0) {
+				gcTimers = ensureCapacity(gcTimers, phaseId, listenerId);
+				Timer gcTimer = gcTimers[phaseId][listenerId];
+				if (gcTimer == null) {
+					gcTimer = gcTimers[phaseId][listenerId] = Timer.builder(phases.get(phaseId) + ".gc")
+							.tag("listener", listeners.get(listenerId))
+							.register(registry);
+				}
+				gcTimer.record(gc, TimeUnit.NANOSECONDS);
+			}
+			excludingGcTimers = ensureCapacity(excludingGcTimers, phaseId, listenerId);
+			Timer excludingGcTimer = excludingGcTimers[phaseId][listenerId];
+			if (excludingGcTimer == null) {
+				excludingGcTimer = excludingGcTimers[phaseId][listenerId] = Timer
+						.builder(phases.get(phaseId) + ".excluding-gc")
+						.tag("listener", listeners.get(listenerId))
+						.publishPercentiles(.50, .75, .90)
+						.register(registry);
+			}
+			excludingGcTimer.record(duration - gc, TimeUnit.NANOSECONDS);
+		}
+
+		private Timer[][] ensureCapacity(Timer[][] timers, int phaseId, int listenerId) {
+			if (phaseId >= timers.length) {
+				timers = Arrays.copyOf(timers, phaseId + 1);
+			}
+			if (timers[phaseId] == null || listenerId >= timers[phaseId].length) {
+				timers[phaseId] = timers[phaseId] == null ? new Timer[listenerId + 1]
+						: Arrays.copyOf(timers[phaseId], listenerId + 1);
+			}
+			return timers;
+		}
+	}
+
+}
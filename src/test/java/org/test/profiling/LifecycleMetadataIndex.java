@@ -0,0 +1,356 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * An index of what the listeners and the bootstrapping look up by reflection for every test class, written at build
+ * time so that the tests do not have to scan their classes at run time:
+ *
+ * <ul>
+ * <li>{@code <test class>.before-transaction} and {@code <test class>.after-transaction} - the
+ * {@code @BeforeTransaction} and {@code @AfterTransaction} methods, in the order
+ * {@link CachingTransactionalTestExecutionListener} runs them, as {@code <declaring class>#<method>}.</li>
+ * <li>{@code <test class>.no-op-listeners} - the listeners {@link NoOpListenerDetection} finds to do nothing for the
+ * test class.</li>
+ * <li>{@code <test class>.configuration-class} - the class the {@link BootstrapCache} keys the test class by.</li>
+ * <li>{@code <test class>.fingerprint} - a CRC-32 of the last-modified times of the class files of the test class,
+ * its superclasses and its interfaces, the JDK's left out.</li>
+ * </ul>
+ *
+ * The index is written to {@value #INDEX_LOCATION} by {@link #main(String[])}, which the build runs on the compiled
+ * test classes in the {@code process-test-classes} phase when the {@code lifecycle-metadata-index} profile is active. Every lookup falls back to reflection when there is no index,
+ * the test class is not in it, the fingerprint of its class files no longer matches the one in the index, or a method
+ * in the index no longer exists. An IDE that recompiles a test class or one of its superclasses without running the
+ * build step therefore gets the reflective behaviour for the classes it changed, instead of stale metadata.
+ */
+public final class LifecycleMetadataIndex {
+
+	public static final String INDEX_LOCATION = "META-INF/profiling/lifecycle-metadata.properties";
+
+	private static final String BEFORE_TRANSACTION = ".before-transaction";
+
+	private static final String AFTER_TRANSACTION = ".after-transaction";
+
+	private static final String NO_OP_LISTENERS = ".no-op-listeners";
+
+	private static final String CONFIGURATION_CLASS = ".configuration-class";
+
+	private static final String FINGERPRINT = ".fingerprint";
+
+	private static final Properties index = load();
+
+	/**
+	 * The fingerprint of the class files of every test class, computed once per class.
+	 */
+	private static final ClassValue<String> fingerprints = new ClassValue<String>() {
+
+		@Override
+		protected String computeValue(Class<?> testClass) {
+			return fingerprint(testClass);
+		}
+	};
+
+	private LifecycleMetadataIndex() {
+	}
+
+	/**
+	 * Write the index of every test class in a directory of compiled test classes, then time looking the metadata up
+	 * through reflection against reading it from the index.
+	 *
+	 * <p>Usage: {@code LifecycleMetadataIndex <test classes directory>}
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: LifecycleMetadataIndex <test classes directory>");
+			System.exit(2);
+		}
+		Path directory = Paths.get(args[0]);
+		List<Class<?>> testClasses = findTestClasses(directory);
+
+		long start = System.nanoTime();
+		Properties properties = new Properties();
+		for (Class<?> testClass : testClasses) {
+			properties.setProperty(testClass.getName() + BEFORE_TRANSACTION,
+					format(CachingTransactionalTestExecutionListener.findBeforeTransactionMethods(testClass)));
+			properties.setProperty(testClass.getName() + AFTER_TRANSACTION,
+					format(CachingTransactionalTestExecutionListener.findAfterTransactionMethods(testClass)));
+			properties.setProperty(testClass.getName() + NO_OP_LISTENERS,
+					String.join(",", NoOpListenerDetection.evaluateRules(testClass)));
+			properties.setProperty(testClass.getName() + CONFIGURATION_CLASS,
+					BootstrapCache.Key.findConfigurationClass(testClass).getName());
+			properties.setProperty(testClass.getName() + FINGERPRINT, fingerprints.get(testClass));
+		}
+		long reflection = System.nanoTime() - start;
+
+		Path file = directory.resolve(INDEX_LOCATION);
+		Files.createDirectories(file.getParent());
+		try (OutputStream output = Files.newOutputStream(file)) {
+			properties.store(output, "Written by " + LifecycleMetadataIndex.class.getName() + ", do not edit");
+		}
+
+		start = System.nanoTime();
+		Properties written = new Properties();
+		try (InputStream input = Files.newInputStream(file)) {
+			written.load(input);
+		}
+		for (Class<?> testClass : testClasses) {
+			if (getBeforeTransactionMethods(written, testClass) == null
+					|| getAfterTransactionMethods(written, testClass) == null
+					|| getNoOpListeners(written, testClass) == null
+					|| getConfigurationClass(written, testClass) == null) {
+				throw new IllegalStateException("The index does not resolve " + testClass.getName());
+			}
+		}
+		long indexed = System.nanoTime() - start;
+		System.out.println(String.format(
+				"Indexed %1$d test classes to %2$s, reflection: %3$.3fms, reading the index: %4$.3fms", testClasses.size(),
+				file, reflection / 1e6, indexed / 1e6));
+	}
+
+	private static List<Class<?>> findTestClasses(Path directory) throws IOException {
+		List<Class<?>> testClasses = new ArrayList<>();
+		ClassLoader classLoader = LifecycleMetadataIndex.class.getClassLoader();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.filter(path -> path.toString().endsWith(ClassUtils.CLASS_FILE_SUFFIX))
+					.collect(Collectors.toList())) {
+				String relativePath = directory.relativize(file).toString();
+				String className = relativePath
+						.substring(0, relativePath.length() - ClassUtils.CLASS_FILE_SUFFIX.length())
+						.replace(file.getFileSystem().getSeparator(), ".");
+				try {
+					Class<?> candidate = Class.forName(className, false, classLoader);
+					if (isTestClass(candidate)) {
+						testClasses.add(candidate);
+					}
+				} catch (ClassNotFoundException | LinkageError | RuntimeException ex) {
+					// Benchmarks and the like whose dependencies are not on the class path, they are no tests. Spring
+					// wraps the LinkageError in an IllegalStateException when it introspects their methods.
+				}
+			}
+		}
+		return testClasses;
+	}
+
+	private static boolean isTestClass(Class<?> candidate) {
+		if (candidate.isInterface() || candidate.isAnonymousClass() || candidate.isSynthetic()
+				|| Modifier.isAbstract(candidate.getModifiers())) {
+			return false;
+		}
+		return Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(candidate, ReflectionUtils.USER_DECLARED_METHODS))
+				.anyMatch(method -> AnnotatedElementUtils.hasAnnotation(method, org.junit.Test.class)
+						|| AnnotatedElementUtils.hasAnnotation(method, org.junit.jupiter.api.Test.class));
+	}
+
+	/**
+	 * @return the CRC-32 of the last-modified times of the class files of the test class, its superclasses and its
+	 * interfaces, in hex, or an empty string if one of them cannot be read
+	 */
+	private static String fingerprint(Class<?> testClass) {
+		Set<Class<?>> hierarchy = new LinkedHashSet<>();
+		for (Class<?> type = testClass; type != null; type = type.getSuperclass()) {
+			hierarchy.add(type);
+		}
+		hierarchy.addAll(ClassUtils.getAllInterfacesForClassAsSet(testClass));
+		CRC32 crc = new CRC32();
+		for (Class<?> type : hierarchy) {
+			if (type.getClassLoader() == null) {
+				continue;
+			}
+			long lastModified = lastModified(type);
+			if (lastModified == 0) {
+				return "";
+			}
+			for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+				crc.update((int) (lastModified >>> shift));
+			}
+		}
+		return Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * @return the last-modified time of the class file of the type, or of the jar it is in, {@code 0} if it cannot be
+	 * read
+	 */
+	private static long lastModified(Class<?> type) {
+		CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return 0;
+		}
+		try {
+			Path location = Paths.get(codeSource.getLocation().toURI());
+			Path classFile = Files.isDirectory(location)
+					? location.resolve(ClassUtils.convertClassNameToResourcePath(type.getName())
+							+ ClassUtils.CLASS_FILE_SUFFIX)
+					: location;
+			return Files.getLastModifiedTime(classFile).toMillis();
+		} catch (IOException | URISyntaxException | RuntimeException ex) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return whether the index has the test class and its class files have not changed since it was written
+	 */
+	private static boolean isUpToDate(Properties index, Class<?> testClass) {
+		String fingerprint = index.getProperty(testClass.getName() + FINGERPRINT);
+		return fingerprint != null && !fingerprint.isEmpty() && fingerprint.equals(fingerprints.get(testClass));
+	}
+
+	private static String format(List<Method> methods) {
+		return methods.stream().map(method -> method.getDeclaringClass().getName() + "#" + method.getName())
+				.collect(Collectors.joining(","));
+	}
+
+	private static Properties load() {
+		Properties properties = new Properties();
+		if ("false".equals(System.getProperty(TimingTestContextManager.METADATA_INDEX_PROPERTY))) {
+			return properties;
+		}
+		try {
+			Enumeration<URL> resources = LifecycleMetadataIndex.class.getClassLoader().getResources(INDEX_LOCATION);
+			while (resources.hasMoreElements()) {
+				try (InputStream input = resources.nextElement().openStream()) {
+					properties.load(input);
+				}
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read the lifecycle metadata index", ex);
+		}
+		return properties;
+	}
+
+	/**
+	 * @return the {@code @BeforeTransaction} methods of the test class, {@code null} if they are not in the index or
+	 * the index is out of date for the test class
+	 */
+	@Nullable
+	static List<Method> getBeforeTransactionMethods(Class<?> testClass) {
+		return getBeforeTransactionMethods(index, testClass);
+	}
+
+	/**
+	 * @return the {@code @AfterTransaction} methods of the test class, {@code null} if they are not in the index or
+	 * the index is out of date for the test class
+	 */
+	@Nullable
+	static List<Method> getAfterTransactionMethods(Class<?> testClass) {
+		return getAfterTransactionMethods(index, testClass);
+	}
+
+	/**
+	 * @return the names of the listener classes that do nothing for the test class, {@code null} if they are not in
+	 * the index or the index is out of date for the test class
+	 */
+	@Nullable
+	static Set<String> getNoOpListeners(Class<?> testClass) {
+		return getNoOpListeners(index, testClass);
+	}
+
+	/**
+	 * @return the class the test class inherits all of its configuration from, {@code null} if it is not in the index
+	 * or the index is out of date for the test class
+	 */
+	@Nullable
+	static Class<?> getConfigurationClass(Class<?> testClass) {
+		return getConfigurationClass(index, testClass);
+	}
+
+	@Nullable
+	private static List<Method> getBeforeTransactionMethods(Properties index, Class<?> testClass) {
+		if (!isUpToDate(index, testClass)) {
+			return null;
+		}
+		return resolveMethods(testClass, index.getProperty(testClass.getName() + BEFORE_TRANSACTION));
+	}
+
+	@Nullable
+	private static List<Method> getAfterTransactionMethods(Properties index, Class<?> testClass) {
+		if (!isUpToDate(index, testClass)) {
+			return null;
+		}
+		return resolveMethods(testClass, index.getProperty(testClass.getName() + AFTER_TRANSACTION));
+	}
+
+	@Nullable
+	private static Set<String> getNoOpListeners(Properties index, Class<?> testClass) {
+		if (!isUpToDate(index, testClass)) {
+			return null;
+		}
+		String listeners = index.getProperty(testClass.getName() + NO_OP_LISTENERS);
+		return listeners == null ? null : new LinkedHashSet<>(StringUtils.commaDelimitedListToSet(listeners));
+	}
+
+	@Nullable
+	private static Class<?> getConfigurationClass(Properties index, Class<?> testClass) {
+		if (!isUpToDate(index, testClass)) {
+			return null;
+		}
+		return findSuperclass(testClass, index.getProperty(testClass.getName() + CONFIGURATION_CLASS));
+	}
+
+	/**
+	 * @return the methods, {@code null} if there are none in the index or one of them cannot be found
+	 */
+	@Nullable
+	private static List<Method> resolveMethods(Class<?> testClass, @Nullable String methods) {
+		if (methods == null) {
+			return null;
+		}
+		List<Method> resolved = new ArrayList<>();
+		for (String method : StringUtils.commaDelimitedListToStringArray(methods)) {
+			int separator = method.indexOf('#');
+			Class<?> declaringClass = findSuperclass(testClass, method.substring(0, separator));
+			if (declaringClass == null) {
+				return null;
+			}
+			try {
+				resolved.add(declaringClass.getDeclaredMethod(method.substring(separator + 1)));
+			} catch (NoSuchMethodException ex) {
+				return null;
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * @return the test class or the superclass of it with the given name, {@code null} if there is none
+	 */
+	@Nullable
+	private static Class<?> findSuperclass(Class<?> testClass, @Nullable String className) {
+		for (Class<?> candidate = testClass; className != null && candidate != null;
+				candidate = candidate.getSuperclass()) {
+			if (candidate.getName().equals(className)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.test.profiling;
+
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.TestContext;
+
+/**
+ * Notified by {@link TimingTestContextManager} of the boundaries of every span it times: each listener callback and
+ * the test body in between {@code beforeTestExecution} and {@code afterTestExecution}. Application context loads are
+ * reported separately, they happen within the callback of the listener that first asked for the context, and so are
+ * test classes, which enclose all other spans of the class.
+ *
+ * <p>Both callbacks are invoked on the test thread, outside of the measured interval, so observers do not distort the
+ * samples. They still add to the run time of the suite though, so keep them cheap.
+ */
+public interface LifecycleObserver {
+
+	/**
+	 * The phase that the test body is reported under.
+	 */
+	String TEST_EXECUTION = "testExecution";
+
+	/**
+	 * The listener name that the test body is reported under.
+	 */
+	String TEST_BODY = "test";
+
+	/**
+	 * A span is about to start.
+	 * @param phase the lifecycle phase, for example {@code beforeTestMethod}
+	 * @param listener the simple name of the listener class
+	 * @param testContext the current test context
+	 */
+	default void spanStarted(String phase, String listener, TestContext testContext) {
+	}
+
+	/**
+	 * A span has ended.
+	 * @param phase the lifecycle phase, for example {@code beforeTestMethod}
+	 * @param listener the simple name of the listener class
+	 * @param testContext the current test context
+	 * @param startNanos the {@link System#nanoTime()} the span started at
+	 * @param endNanos the {@link System#nanoTime()} the span ended at
+	 */
+	default void spanEnded(String phase, String listener, TestContext testContext, long startNanos,
+			long endNanos) {
+	}
+
+	/**
+	 * A test class is about to start, before any of its {@code beforeTestClass} callbacks.
+	 * @param testContext the test context of the class
+	 */
+	default void testClassStarted(TestContext testContext) {
+	}
+
+	/**
+	 * A test class has ended, after all of its {@code afterTestClass} callbacks.
+	 * @param testContext the test context of the class
+	 * @param startNanos the {@link System#nanoTime()} the class started at
+	 * @param endNanos the {@link System#nanoTime()} the class ended at
+	 */
+	default void testClassEnded(TestContext testContext, long startNanos, long endNanos) {
+	}
+
+	/**
+	 * An application context is about to be loaded because it is not in the context cache yet.
+	 * @param mergedContextConfiguration the configuration of the context
+	 */
+	default void contextLoadStarted(MergedContextConfiguration mergedContextConfiguration) {
+	}
+
+	/**
+	 * An application context has been loaded, or failed to load.
+	 * @param mergedContextConfiguration the configuration of the context
+	 * @param startNanos the {@link System#nanoTime()} the load started at
+	 * @param endNanos the {@link System#nanoTime()} the load ended at
+	 */
+	default void contextLoadEnded(MergedContextConfiguration mergedContextConfiguration, long startNanos,
+			long endNanos) {
+	}
+
+	/**
+	 * Called when the JVM exits, before the report is printed.
+	 */
+	default void close() {
+	}
+
+}
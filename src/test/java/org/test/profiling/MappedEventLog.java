@@ -0,0 +1,234 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends every sample to a memory-mapped file as it is taken, so that the timings of a fork that crashed, hung and was
+ * killed, or ran out of memory are not lost with it: the pages of the mapping belong to the operating system, which
+ * writes them out whether or not the JVM gets to run its shutdown hooks. {@link EventLogReader} rebuilds the timing
+ * report from the file, complete or not.
+ *
+ * <p>The file is preallocated to its full size and mapped once. Writers reserve space for a record by setting its
+ * header from zero to the record's length with a compare-and-set in the file itself, so that the length of every
+ * reserved record is in the file before anything else. They then fill it in and write the type into the header last,
+ * with release semantics. A record whose header has no type yet was never finished, and the reader skips it; the log
+ * ends at the first header that is still zero. Once the file is full further samples are dropped and counted. Samples
+ * recorded while or after the log is closed are dropped too: those reserved after the end record are never read, and
+ * those reserved before it are read only if they were finished. All numbers are little-endian, records are aligned to
+ * eight bytes:
+ *
+ * <ul>
+ * <li>File header, 64 bytes - the magic number, the format version, the header size, the pid, the creation time in
+ * epoch milliseconds, the measurement floor in nanoseconds ({@code -1} until calibrated) and the file size.</li>
+ * <li>Record header, 4 bytes - the record type in the high byte, {@code 0} while the record is being written, and the
+ * record length in bytes in the low three.</li>
+ * <li>{@code NAME} - a phase or listener name, written before the first sample that refers to it: the kind, the
+ * length of the name, its id and its UTF-8 bytes.</li>
+ * <li>{@code SAMPLE}, 48 bytes - the phase and listener ids, the thread id, the start, the duration, the CPU time and
+ * the allocated bytes, the same numbers {@link TimingRecorder#record} gets.</li>
+ * <li>{@code END}, 8 bytes - written when the JVM exits normally.</li>
+ * </ul>
+ */
+class MappedEventLog {
+
+	static final long MAGIC = 0x474f4c5645545053L; // "SPTEVLOG"
+
+	static final int VERSION = 1;
+
+	static final int FILE_HEADER_SIZE = 64;
+
+	static final int MEASUREMENT_FLOOR_OFFSET = 32;
+
+	static final int SAMPLE = 1;
+
+	static final int NAME = 2;
+
+	static final int END = 3;
+
+	static final int SAMPLE_SIZE = 48;
+
+	static final int END_SIZE = 8;
+
+	static final byte PHASE_NAME = 0;
+
+	static final byte LISTENER_NAME = 1;
+
+	private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class,
+			ByteOrder.LITTLE_ENDIAN);
+
+	private final Path file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	/**
+	 * Where the next record probably starts. Writers that find it reserved already move on by the length in its header.
+	 */
+	private final AtomicLong position = new AtomicLong(FILE_HEADER_SIZE);
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Names phases = new Names((name, id) -> writeName(PHASE_NAME, id, name));
+
+	private final Names listeners = new Names((name, id) -> writeName(LISTENER_NAME, id, name));
+
+	private volatile boolean closed;
+
+	MappedEventLog(Path file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		this.capacity = buffer.capacity();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(0, MAGIC);
+		buffer.putInt(8, VERSION);
+		buffer.putInt(12, FILE_HEADER_SIZE);
+		buffer.putLong(16, ProcessHandle.current().pid());
+		buffer.putLong(24, System.currentTimeMillis());
+		buffer.putLong(MEASUREMENT_FLOOR_OFFSET, -1);
+		buffer.putLong(40, capacity);
+	}
+
+	/**
+	 * Create the file, replacing any previous one, and map it.
+	 * @param file the file to log to
+	 * @param size the size of the file, the log holds about {@code size / 48} samples
+	 */
+	static MappedEventLog create(Path file, long size) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		int capacity = (int) Math.min(Integer.MAX_VALUE & ~7, Math.max(FILE_HEADER_SIZE + END_SIZE, size));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			// The mapping stays valid after the channel is closed.
+			return new MappedEventLog(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+		}
+	}
+
+	/**
+	 * @return a recorder that logs every sample before passing it on to the given one
+	 */
+	TimingRecorder andThen(TimingRecorder delegate) {
+		return new TimingRecorder() {
+
+			@Override
+			public void record(String phase, String listener, long startNanos, long durationNanos, long cpuTimeNanos,
+					long allocatedBytes) {
+				MappedEventLog.this.record(phase, listener, startNanos, durationNanos, cpuTimeNanos, allocatedBytes);
+				delegate.record(phase, listener, startNanos, durationNanos, cpuTimeNanos, allocatedBytes);
+			}
+
+			@Override
+			public void flush() {
+				delegate.flush();
+			}
+
+			@Override
+			public void close() {
+				delegate.close();
+			}
+		};
+	}
+
+	void record(String phase, String listener, long startNanos, long durationNanos, long cpuTimeNanos,
+			long allocatedBytes) {
+		int ids = phases.idOf(phase) << 16 | (listeners.idOf(listener) & 0xffff);
+		int offset = reserve(SAMPLE_SIZE);
+		if (offset < 0) {
+			return;
+		}
+		buffer.putInt(offset + 4, ids);
+		buffer.putLong(offset + 8, Thread.currentThread().getId());
+		buffer.putLong(offset + 16, startNanos);
+		buffer.putLong(offset + 24, durationNanos);
+		buffer.putLong(offset + 32, cpuTimeNanos);
+		buffer.putLong(offset + 40, allocatedBytes);
+		publish(offset, SAMPLE, SAMPLE_SIZE);
+	}
+
+	/**
+	 * Record the measurement floor in the file header, so that the report rebuilt from the file is corrected the same
+	 * way.
+	 */
+	void measurementFloor(long measurementFloorNanos) {
+		buffer.putLong(MEASUREMENT_FLOOR_OFFSET, measurementFloorNanos);
+	}
+
+	private void writeName(byte kind, int id, String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int length = (12 + bytes.length + 7) & ~7;
+		int offset = reserve(length);
+		if (offset < 0) {
+			return;
+		}
+		buffer.put(offset + 4, kind);
+		buffer.putShort(offset + 6, (short) bytes.length);
+		buffer.putInt(offset + 8, id);
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(offset + 12 + i, bytes[i]);
+		}
+		publish(offset, NAME, length);
+	}
+
+	/**
+	 * @return the offset of the reserved record, {@code -1} if the log is full or closed
+	 */
+	private int reserve(int length) {
+		if (closed) {
+			return -1;
+		}
+		// Leave room for the end record.
+		int offset = reserve(length, capacity - END_SIZE);
+		if (offset < 0) {
+			dropped.incrementAndGet();
+		}
+		return offset;
+	}
+
+	/**
+	 * @return the offset of the reserved record, {@code -1} if it would end after the limit
+	 */
+	private int reserve(int length, int limit) {
+		long offset = position.get();
+		while (offset + length <= limit) {
+			int header = (int) INT_VIEW.compareAndExchange(buffer, (int) offset, 0, length);
+			if (header == 0) {
+				long end = offset + length;
+				position.accumulateAndGet(end, Math::max);
+				return (int) offset;
+			}
+			offset += header & 0xffffff;
+		}
+		return -1;
+	}
+
+	private void publish(int offset, int type, int length) {
+		INT_VIEW.setRelease(buffer, offset, type << 24 | length);
+	}
+
+	/**
+	 * Write the end record, marking the log as complete, and force the file to disk. Samples recorded while or after
+	 * this runs are dropped.
+	 */
+	void close() {
+		closed = true;
+		// The records reserve() hands out leave room for this one.
+		int offset = reserve(END_SIZE, capacity);
+		publish(offset, END, END_SIZE);
+		buffer.force();
+		System.out.println(String.format("Event log: %1$d bytes written to %2$s%3$s", offset + END_SIZE, file,
+				dropped.get() > 0 ? ", " + dropped.get() + " records dropped because the file was full" : ""));
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.test.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records every sample straight into Micrometer meters, tagged with the listener:
+ *
+ * <ul>
+ * <li>{@code <phase>} - the wall-clock time, with percentiles.</li>
+ * <li>{@code <phase>.cpu} - the CPU time.</li>
+ * <li>{@code <phase>.allocated} - the allocated bytes.</li>
+ * </ul>
+ *
+ * Every sample looks its meters up in the registry and updates their histograms under a lock, on the calling thread.
+ * Callers that can identify a phase and listener more cheaply than by name can hold on to the {@link Meters} instead.
+ */
+class MeterRecorder implements TimingRecorder {
+
+	private final MeterRegistry registry;
+
+	MeterRecorder(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void record(String phase, String listener, long startNanos, long durationNanos, long cpuTimeNanos,
+			long allocatedBytes) {
+		getTimer(phase, listener).record(durationNanos, TimeUnit.NANOSECONDS);
+		if (cpuTimeNanos >= 0) {
+			getCpuTimer(phase, listener).record(cpuTimeNanos, TimeUnit.NANOSECONDS);
+		}
+		if (allocatedBytes >= 0) {
+			getAllocationSummary(phase, listener).record(allocatedBytes);
+		}
+	}
+
+	/**
+	 * @return the meters of a phase and listener, registered if they do not exist yet
+	 */
+	Meters meters(String phase, String listener) {
+		return new Meters(getTimer(phase, listener), getCpuTimer(phase, listener),
+				getAllocationSummary(phase, listener));
+	}
+
+	private Timer getTimer(String name, String listener) {
+		return Timer.builder(name)
+				.tag("listener",  listener)
+				.publishPercentiles(.50,.75, .90)
+				.register(registry);
+	}
+
+	private Timer getCpuTimer(String name, String listener) {
+		return Timer.builder(name + ".cpu")
+				.tag("listener",  listener)
+				.register(registry);
+	}
+
+	private DistributionSummary getAllocationSummary(String name, String listener) {
+		return DistributionSummary.builder(name + ".allocated")
+				.tag("listener",  listener)
+				.baseUnit("bytes")
+				.register(registry);
+	}
+
+	static class Meters {
+
+		private final Timer timer;
+
+		private final Timer cpuTimer;
+
+		private final DistributionSummary allocationSummary;
+
+		Meters(Timer timer, Timer cpuTimer, DistributionSummary allocationSummary) {
+			this.timer = timer;
+			this.cpuTimer = cpuTimer;
+			this.allocationSummary = allocationSummary;
+		}
+
+		void record(long durationNanos, long cpuTimeNanos, long allocatedBytes) {
+			timer.record(durationNanos, TimeUnit.NANOSECONDS);
+			if (cpuTimeNanos >= 0) {
+				cpuTimer.record(cpuTimeNanos, TimeUnit.NANOSECONDS);
+			}
+			if (allocatedBytes >= 0) {
+				allocationSummary.record(allocatedBytes);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.test.profiling;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Assigns ids to names. Most phases and listener names are the same {@code String} instances on every call, so a
+ * lookup is an identity scan over a handful of entries. Names that are built anew on every call, such as the listener
+ * of a cached bootstrap, are found by a second scan with {@code equals}, also without a lock. Only new names are added
+ * under a lock.
+ */
+class Names {
+
+	private final ObjIntConsumer<String> registrationListener;
+
+	private volatile String[] names = new String[0];
+
+	Names() {
+		this((name, id) -> {
+		});
+	}
+
+	/**
+	 * @param registrationListener called with every new name and its id, under the lock and before the id is handed
+	 * out to any caller
+	 */
+	Names(ObjIntConsumer<String> registrationListener) {
+		this.registrationListener = registrationListener;
+	}
+
+	int idOf(String name) {
+		String[] names = this.names;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == name) {
+				return i;
+			}
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return register(name);
+	}
+
+	private synchronized int register(String name) {
+		String[] names = this.names;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		registrationListener.accept(name, names.length);
+		String[] registered = new String[names.length + 1];
+		System.arraycopy(names, 0, registered, 0, names.length);
+		registered[names.length] = name;
+		this.names = registered;
+		return names.length;
+	}
+
+	String get(int id) {
+		return names[id];
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.test.profiling;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.test.autoconfigure.restdocs.RestDocsTestExecutionListener;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.MockBeans;
+import org.springframework.boot.test.mock.mockito.MockitoTestExecutionListener;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.mock.mockito.SpyBeans;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.jdbc.SqlScriptsTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextBeforeModesTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Finds the listeners that provably do nothing for a test class, from the test class alone: every rule mirrors the
+ * check the listener itself makes before it does anything, for example the {@link SqlScriptsTestExecutionListener}
+ * only runs scripts declared with {@code @Sql}. A rule may keep a listener that turns out to do nothing, it never drops
+ * one that would have done something.
+ *
+ * <p>Only listeners with a rule are ever found, and only the exact listener classes the rules were written for, a
+ * subclass may do more. Listeners that act on what is in the application context, such as the
+ * {@code ResetMocksTestExecutionListener} or the {@code MockMvcPrintOnlyOnFailureTestExecutionListener}, cannot be
+ * decided from the test class; the timing report lists those that stayed below the measurement floor as candidates
+ * for {@link CachingTransactionalTestExecutionListener#EXCLUDED_LISTENERS_PROPERTY}.
+ */
+final class NoOpListenerDetection {
+
+	/**
+	 * What {@link TimingTestContextManager} does with the listeners that were found to do nothing.
+	 */
+	enum Mode {
+
+		/**
+		 * Do not look for them.
+		 */
+		OFF,
+
+		/**
+		 * Run them anyway, but count the callbacks that could have been skipped.
+		 */
+		REPORT,
+
+		/**
+		 * Remove them from the listeners of the test class and count the callbacks that were skipped.
+		 */
+		SKIP
+	}
+
+	/**
+	 * The same attribute source the transactional listener creates, non-public test methods included.
+	 */
+	private static final TransactionAttributeSource transactionAttributeSource =
+			new AnnotationTransactionAttributeSource(false);
+
+	/**
+	 * Listener class to the rule that tells whether it does nothing for a test class.
+	 */
+	private static final Map<Class<?>, Predicate<Class<?>>> rules = createRules();
+
+	private NoOpListenerDetection() {
+	}
+
+	private static Map<Class<?>, Predicate<Class<?>>> createRules() {
+		Map<Class<?>, Predicate<Class<?>>> rules = new LinkedHashMap<>();
+		rules.put(DirtiesContextBeforeModesTestExecutionListener.class,
+				testClass -> !isAnnotated(testClass, List.of(DirtiesContext.class)));
+		rules.put(DirtiesContextTestExecutionListener.class,
+				testClass -> !isAnnotated(testClass, List.of(DirtiesContext.class)));
+		rules.put(SqlScriptsTestExecutionListener.class,
+				testClass -> !isAnnotated(testClass, List.of(Sql.class, SqlGroup.class)));
+		rules.put(TransactionalTestExecutionListener.class, testClass -> !hasTransactionalMethods(testClass));
+		rules.put(CachingTransactionalTestExecutionListener.class, testClass -> !hasTransactionalMethods(testClass));
+		rules.put(MockitoTestExecutionListener.class, testClass -> !hasMockitoAnnotations(testClass)
+				&& !isAnnotated(testClass, List.of(MockBean.class, MockBeans.class, SpyBean.class, SpyBeans.class)));
+		// The listener checks the class path on every callback.
+		rules.put(RestDocsTestExecutionListener.class, testClass -> !ClassUtils.isPresent(
+				"org.springframework.restdocs.ManualRestDocumentation", RestDocsTestExecutionListener.class.getClassLoader()));
+		return rules;
+	}
+
+	/**
+	 * @return whether there is a rule for the listener with the given simple name
+	 */
+	static boolean hasRule(String listener) {
+		return rules.keySet().stream().anyMatch(listenerClass -> listenerClass.getSimpleName().equals(listener));
+	}
+
+	/**
+	 * @param testClass the test class
+	 * @param listeners the listeners of the test class
+	 * @return the listeners that provably do nothing for the test class, in the order they were given
+	 */
+	static List<TestExecutionListener> findNoOpListeners(Class<?> testClass, List<TestExecutionListener> listeners) {
+		Set<String> noOpListeners = LifecycleMetadataIndex.getNoOpListeners(testClass);
+		return listeners.stream().filter(listener -> {
+			Predicate<Class<?>> rule = rules.get(listener.getClass());
+			return rule != null && (noOpListeners != null ? noOpListeners.contains(listener.getClass().getName())
+					: rule.test(testClass));
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the names of all the listener classes with a rule that do nothing for the test class, found by
+	 * reflection
+	 */
+	static Set<String> evaluateRules(Class<?> testClass) {
+		return rules.entrySet().stream().filter(rule -> rule.getValue().test(testClass))
+				.map(rule -> rule.getKey().getName()).collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+
+	/**
+	 * @return whether the test class, one of its methods or one of its fields carries one of the annotations, directly,
+	 * as a meta-annotation or inherited
+	 */
+	private static boolean isAnnotated(Class<?> testClass, List<Class<? extends Annotation>> annotationTypes) {
+		Predicate<AnnotatedElement> annotated = element -> annotationTypes.stream()
+				.anyMatch(annotationType -> AnnotatedElementUtils.hasAnnotation(element, annotationType));
+		if (annotated.test(testClass) || Arrays.stream(getMethods(testClass)).anyMatch(annotated)) {
+			return true;
+		}
+		boolean[] found = new boolean[1];
+		ReflectionUtils.doWithFields(testClass, field -> found[0] = true, annotated::test);
+		return found[0];
+	}
+
+	private static boolean hasTransactionalMethods(Class<?> testClass) {
+		return Arrays.stream(getMethods(testClass))
+				.anyMatch(method -> transactionAttributeSource.getTransactionAttribute(method, testClass) != null);
+	}
+
+	/**
+	 * The same check the {@link MockitoTestExecutionListener} makes before it initializes the mocks of a test instance.
+	 */
+	private static boolean hasMockitoAnnotations(Class<?> testClass) {
+		boolean[] found = new boolean[1];
+		ReflectionUtils.doWithFields(testClass, field -> found[0] = true, NoOpListenerDetection::hasMockitoAnnotation);
+		return found[0];
+	}
+
+	private static boolean hasMockitoAnnotation(Field field) {
+		return Arrays.stream(field.getDeclaredAnnotations())
+				.anyMatch(annotation -> annotation.annotationType().getName().startsWith("org.mockito"));
+	}
+
+	private static Method[] getMethods(Class<?> testClass) {
+		return ReflectionUtils.getUniqueDeclaredMethods(testClass, ReflectionUtils.USER_DECLARED_METHODS);
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.boot.test.autoconfigure.restdocs.RestDocsTestExecutionListener;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.MockitoTestExecutionListener;
+import org.springframework.boot.test.mock.mockito.ResetMocksTestExecutionListener;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlScriptsTestExecutionListener;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextBeforeModesTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+class NoOpListenerDetectionTests {
+
+	private final List<TestExecutionListener> listeners = Arrays.asList(
+			new DirtiesContextBeforeModesTestExecutionListener(), new MockitoTestExecutionListener(),
+			new DependencyInjectionTestExecutionListener(), new DirtiesContextTestExecutionListener(),
+			new TransactionalTestExecutionListener(), new SqlScriptsTestExecutionListener(),
+			new ResetMocksTestExecutionListener(), new RestDocsTestExecutionListener());
+
+	@Test
+	void plainTestClassKeepsOnlyTheListenersThatCannotBeDecided() {
+		assertThat(noOpListeners(Plain.class)).containsExactly("DirtiesContextBeforeModesTestExecutionListener",
+				"MockitoTestExecutionListener", "DirtiesContextTestExecutionListener",
+				"TransactionalTestExecutionListener", "SqlScriptsTestExecutionListener", "RestDocsTestExecutionListener");
+	}
+
+	@Test
+	void annotatedMethodsFieldsAndSuperclassesKeepTheirListeners() {
+		assertThat(noOpListeners(Annotated.class)).containsExactly("RestDocsTestExecutionListener");
+		assertThat(noOpListeners(MockitoMock.class)).doesNotContain("MockitoTestExecutionListener");
+	}
+
+	@Test
+	void subclassesOfListenersAreKept() {
+		List<TestExecutionListener> subclass = Arrays.asList(new TransactionalTestExecutionListener() {
+		});
+		assertThat(NoOpListenerDetection.findNoOpListeners(Plain.class, subclass)).isEmpty();
+	}
+
+	private List<String> noOpListeners(Class<?> testClass) {
+		return NoOpListenerDetection.findNoOpListeners(testClass, listeners).stream()
+				.map(listener -> listener.getClass().getSimpleName()).collect(Collectors.toList());
+	}
+
+	static class Plain {
+
+		void test() {
+		}
+	}
+
+	@DirtiesContext
+	static class Dirty {
+	}
+
+	static class Annotated extends Dirty {
+
+		@MockBean
+		Runnable runnable;
+
+		@Transactional
+		void transactional() {
+		}
+
+		@Sql("schema.sql")
+		void sql() {
+		}
+	}
+
+	static class MockitoMock {
+
+		@Mock
+		Runnable runnable;
+	}
+
+}
@@ -0,0 +1,231 @@
+package org.test.profiling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the Micrometer work off the test thread. Every test thread writes its samples as primitive longs into a ring
+ * buffer of its own, preallocated when the thread records its first sample, and a background thread drains the rings
+ * into a {@link MeterRecorder} every millisecond. Recording a sample takes no lock and allocates nothing. The drainer
+ * caches the meters by the ids of the phase and listener, so it does not look them up in the registry either.
+ *
+ * <p>Each ring has a single writer, its test thread, and a single reader, whoever holds the lock of this recorder
+ * (the drainer thread, or a caller of {@link #flush()}). The writer publishes a sample by advancing {@code head} with
+ * release semantics after filling the slot, the reader frees slots by advancing {@code tail} the same way. A sample
+ * that finds its ring full is dropped rather than making the test wait; the number of dropped samples is printed when
+ * the recorder is closed. The ring of a thread that has finished is removed once it is drained.
+ */
+class RingBufferRecorder implements TimingRecorder {
+
+	/**
+	 * The ids of the phase and the listener, the start, the duration, the CPU time and the allocated bytes.
+	 */
+	private static final int SLOT_SIZE = 5;
+
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final MeterRecorder delegate;
+
+	private final int capacity;
+
+	private final Names phases = new Names();
+
+	private final Names listeners = new Names();
+
+	private final List<Ring> rings = new CopyOnWriteArrayList<>();
+
+	private final ThreadLocal<Ring> currentRing = ThreadLocal.withInitial(this::register);
+
+	/**
+	 * The meters by phase id and listener id, only used by the reader.
+	 */
+	private MeterRecorder.Meters[][] meters = new MeterRecorder.Meters[0][];
+
+	private Thread drainer;
+
+	/**
+	 * The samples dropped by the threads whose rings were removed, only used by the reader.
+	 */
+	private long droppedByFinishedThreads;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param delegate where the drained samples go
+	 * @param capacity the number of samples each thread's ring holds, rounded up to a power of two between 2 and
+	 * 2<sup>26</sup>
+	 */
+	RingBufferRecorder(MeterRecorder delegate, int capacity) {
+		this.delegate = delegate;
+		this.capacity = 1 << (32 - Integer.numberOfLeadingZeros(Math.min(Math.max(2, capacity), 1 << 26) - 1));
+	}
+
+	@Override
+	public void record(String phase, String listener, long startNanos, long durationNanos, long cpuTimeNanos,
+			long allocatedBytes) {
+		currentRing.get().write(((long) phases.idOf(phase) << 32) | listeners.idOf(listener), startNanos,
+				durationNanos, cpuTimeNanos, allocatedBytes);
+	}
+
+	private synchronized Ring register() {
+		Ring ring = new Ring(Thread.currentThread(), capacity);
+		rings.add(ring);
+		if (drainer == null && !closed) {
+			drainer = new Thread(this::drainContinuously, "profiling-ring-buffer-drainer");
+			drainer.setDaemon(true);
+			drainer.start();
+		}
+		return ring;
+	}
+
+	private void drainContinuously() {
+		while (!closed) {
+			flush();
+			LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+		}
+	}
+
+	@Override
+	public synchronized void flush() {
+		for (Ring ring : rings) {
+			// Checked first, everything the thread wrote before it finished is then visible.
+			boolean finished = !ring.writer.isAlive();
+			long head = (long) Ring.HEAD.getAcquire(ring);
+			long tail = ring.tail;
+			for (; tail < head; tail++) {
+				int slot = (int) (tail & ring.mask) * SLOT_SIZE;
+				long[] slots = ring.slots;
+				long ids = slots[slot];
+				meters((int) (ids >>> 32), (int) ids).record(slots[slot + 2], slots[slot + 3], slots[slot + 4]);
+			}
+			Ring.TAIL.setRelease(ring, tail);
+			if (finished) {
+				droppedByFinishedThreads += ring.dropped;
+				rings.remove(ring);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of samples dropped so far because a ring was full
+	 */
+	synchronized long getDroppedSamples() {
+		return droppedByFinishedThreads + rings.stream().mapToLong(ring -> ring.dropped).sum();
+	}
+
+	/**
+	 * @return the number of rings, of the threads that have recorded a sample and not finished or not been drained
+	 */
+	int getRingCount() {
+		return rings.size();
+	}
+
+	private MeterRecorder.Meters meters(int phaseId, int listenerId) {
+		if (phaseId >= meters.length) {
+			meters = Arrays.copyOf(meters, phaseId + 1);
+		}
+		MeterRecorder.Meters[] phaseMeters = meters[phaseId];
+		if (phaseMeters == null || listenerId >= phaseMeters.length) {
+			phaseMeters = meters[phaseId] = phaseMeters == null ? new MeterRecorder.Meters[listenerId + 1]
+					: Arrays.copyOf(phaseMeters, listenerId + 1);
+		}
+		MeterRecorder.Meters listenerMeters = phaseMeters[listenerId];
+		if (listenerMeters == null) {
+			listenerMeters = phaseMeters[listenerId] = delegate.meters(phases.get(phaseId), listeners.get(listenerId));
+		}
+		return listenerMeters;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		Thread drainer;
+		synchronized (this) {
+			drainer = this.drainer;
+		}
+		if (drainer != null) {
+			LockSupport.unpark(drainer);
+			try {
+				drainer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+		long dropped = getDroppedSamples();
+		if (dropped > 0) {
+			System.out.println(String.format("Ring buffer: %1$d samples dropped because a ring of %2$d was full",
+					dropped, capacity));
+		}
+	}
+
+	private static class Ring {
+
+		private static final VarHandle HEAD;
+
+		private static final VarHandle TAIL;
+
+		static {
+			try {
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				HEAD = lookup.findVarHandle(Ring.class, "head", long.class);
+				TAIL = lookup.findVarHandle(Ring.class, "tail", long.class);
+			} catch (ReflectiveOperationException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+		}
+
+		private final Thread writer;
+
+		private final long[] slots;
+
+		private final int mask;
+
+		/**
+		 * The number of samples written, only advanced by the writer.
+		 */
+		private volatile long head;
+
+		/**
+		 * The number of samples drained, only advanced by the reader.
+		 */
+		private volatile long tail;
+
+		/**
+		 * The writer's last view of {@code tail}, so that it only reads the reader's field when the ring looks full.
+		 */
+		private long cachedTail;
+
+		private volatile long dropped;
+
+		Ring(Thread writer, int capacity) {
+			this.writer = writer;
+			this.slots = new long[capacity * SLOT_SIZE];
+			this.mask = capacity - 1;
+		}
+
+		void write(long ids, long startNanos, long durationNanos, long cpuTimeNanos, long allocatedBytes) {
+			long head = (long) HEAD.getOpaque(this);
+			if (head - cachedTail > mask) {
+				cachedTail = (long) TAIL.getAcquire(this);
+				if (head - cachedTail > mask) {
+					dropped++;
+					return;
+				}
+			}
+			int slot = (int) (head & mask) * SLOT_SIZE;
+			slots[slot] = ids;
+			slots[slot + 1] = startNanos;
+			slots[slot + 2] = durationNanos;
+			slots[slot + 3] = cpuTimeNanos;
+			slots[slot + 4] = allocatedBytes;
+			HEAD.setRelease(this, head + 1);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RingBufferRecorderTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final RingBufferRecorder recorder = new RingBufferRecorder(new MeterRecorder(registry), 2);
+
+	@AfterEach
+	void close() {
+		recorder.close();
+	}
+
+	@Test
+	void samplesThatFindTheRingFullAreDroppedAndCounted() {
+		// The reader holds the lock of the recorder, so nothing is drained until the ring is full.
+		synchronized (recorder) {
+			for (int i = 0; i < 5; i++) {
+				recorder.record("beforeTestMethod", "Listener", i, 1000, -1, -1);
+			}
+		}
+		recorder.flush();
+		assertThat(recorder.getDroppedSamples()).isEqualTo(3);
+		assertThat(registry.get("beforeTestMethod").tag("listener", "Listener").timer().count()).isEqualTo(2);
+	}
+
+	@Test
+	void ringsOfFinishedThreadsAreRemovedOnceDrained() throws InterruptedException {
+		Thread thread = new Thread(() -> recorder.record("beforeTestMethod", "Listener", 0, 1000, -1, -1));
+		thread.start();
+		thread.join();
+		recorder.flush();
+		assertThat(recorder.getRingCount()).isZero();
+		assertThat(registry.get("beforeTestMethod").tag("listener", "Listener").timer().count()).isEqualTo(1);
+	}
+
+}
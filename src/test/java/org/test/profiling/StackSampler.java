@@ -0,0 +1,204 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.test.context.TestContext;
+
+/**
+ * Periodically captures the stack of every thread that is inside a span of {@link TimingTestContextManager}, labels it
+ * with the active phase and listener and aggregates the samples into one folded stack file per phase, the input format
+ * of flame graph tools such as {@code flamegraph.pl} or speedscope.
+ *
+ * <p>Every folded stack starts with the listener, followed by the frames from the listener callback up, so the frames
+ * of the test runner are left out. Samples that hit the instrumentation around the callback start with
+ * {@code TimingTestContextManager.timed} instead. The test body is sampled with its full stack under the
+ * {@code testExecution} phase.
+ *
+ * <p>Stacks are captured with {@link Thread#getStackTrace()}, which works on any JDK without a native agent. The
+ * samples are taken at safepoints, so frames in between safepoint polls are underrepresented. The observer callbacks
+ * themselves only write a few volatile fields, the sampling happens on a daemon thread.
+ */
+class StackSampler implements LifecycleObserver {
+
+	private static final String TIMED_CLASS_NAME = TimingTestContextManager.class.getName();
+
+	private final long intervalNanos;
+
+	private final Path outputDirectory;
+
+	private final Queue<SampledThread> sampledThreads = new ConcurrentLinkedQueue<>();
+
+	private final ThreadLocal<SampledThread> currentThread = ThreadLocal.withInitial(this::register);
+
+	/**
+	 * Folded stack to number of samples, per phase. Only touched by the sampler thread, and by {@link #close()} once it
+	 * has stopped.
+	 */
+	private final Map<String, Map<String, Integer>> foldedStacks = new TreeMap<>();
+
+	private final Thread samplerThread;
+
+	private volatile boolean running = true;
+
+	private long sampleCount;
+
+	private long discardedCount;
+
+	StackSampler(Duration interval, Path outputDirectory) {
+		this.intervalNanos = interval.toNanos();
+		this.outputDirectory = outputDirectory;
+		this.samplerThread = new Thread(this::sample, "profiling-stack-sampler");
+		this.samplerThread.setDaemon(true);
+	}
+
+	/**
+	 * Create an instance and start its sampler thread.
+	 */
+	static StackSampler start(Duration interval, Path outputDirectory) {
+		StackSampler sampler = new StackSampler(interval, outputDirectory);
+		sampler.samplerThread.start();
+		return sampler;
+	}
+
+	@Override
+	public void spanStarted(String phase, String listener, TestContext testContext) {
+		SampledThread sampledThread = currentThread.get();
+		sampledThread.phase = phase;
+		sampledThread.listener = listener;
+		sampledThread.sequence++;
+	}
+
+	@Override
+	public void spanEnded(String phase, String listener, TestContext testContext, long startNanos, long endNanos) {
+		SampledThread sampledThread = currentThread.get();
+		sampledThread.phase = null;
+		sampledThread.sequence++;
+	}
+
+	private SampledThread register() {
+		SampledThread sampledThread = new SampledThread(Thread.currentThread());
+		sampledThreads.add(sampledThread);
+		return sampledThread;
+	}
+
+	private void sample() {
+		long next = System.nanoTime();
+		while (running) {
+			for (SampledThread sampledThread : sampledThreads) {
+				sample(sampledThread);
+			}
+			next += intervalNanos;
+			long delay = next - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			} else {
+				// Sampling took longer than the interval, skip the samples that were missed rather than catching up.
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * A sample is only kept if the thread was in the same span before and after its stack was captured, otherwise it
+	 * could be labelled with the wrong phase.
+	 */
+	private void sample(SampledThread sampledThread) {
+		long sequence = sampledThread.sequence;
+		String phase = sampledThread.phase;
+		String listener = sampledThread.listener;
+		if (phase == null) {
+			return;
+		}
+		StackTraceElement[] stackTrace = sampledThread.thread.getStackTrace();
+		if (sequence != sampledThread.sequence) {
+			discardedCount++;
+			return;
+		}
+		sampleCount++;
+		foldedStacks.computeIfAbsent(phase, key -> new HashMap<>())
+				.merge(fold(phase, listener, stackTrace), 1, Integer::sum);
+	}
+
+	/**
+	 * @return the frames, root first, separated by semicolons
+	 */
+	private static String fold(String phase, String listener, StackTraceElement[] stackTrace) {
+		int root = stackTrace.length - 1;
+		for (int i = 0; i < stackTrace.length; i++) {
+			if (TIMED_CLASS_NAME.equals(stackTrace[i].getClassName()) && "timed".equals(stackTrace[i].getMethodName())) {
+				root = i - 1;
+				// Skip the method reference that timed() invokes the callback through, on JDKs that show it.
+				while (root >= 0 && stackTrace[root].getClassName().startsWith(TIMED_CLASS_NAME)) {
+					root--;
+				}
+				if (root < 0 || !phase.equals(stackTrace[root].getMethodName())) {
+					// Sampled in the instrumentation around the callback, keep timed() so it shows up as such.
+					root = i;
+				}
+				break;
+			}
+		}
+		StringBuilder folded = new StringBuilder(listener);
+		for (int i = root; i >= 0; i--) {
+			folded.append(';').append(stackTrace[i].getClassName()).append('.').append(stackTrace[i].getMethodName());
+		}
+		return folded.toString();
+	}
+
+	/**
+	 * Stop sampling and write a {@code <phase>.folded} file per phase.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(samplerThread);
+		try {
+			samplerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			Files.createDirectories(outputDirectory);
+			for (Map.Entry<String, Map<String, Integer>> phase : foldedStacks.entrySet()) {
+				try (PrintWriter writer = new PrintWriter(
+						Files.newBufferedWriter(outputDirectory.resolve(phase.getKey() + ".folded")))) {
+					phase.getValue().forEach((stack, count) -> writer.println(stack + " " + count));
+				}
+			}
+			System.out.println(String.format("Stack samples: %1$d taken every %2$dus, %3$d discarded, written to %4$s",
+					sampleCount, intervalNanos / 1000, discardedCount, outputDirectory));
+		} catch (IOException e) {
+			System.err.println("Unable to write the stack samples to " + outputDirectory + ": " + e);
+		}
+	}
+
+	private static class SampledThread {
+
+		private final Thread thread;
+
+		private volatile String phase;
+
+		private volatile String listener;
+
+		/**
+		 * Incremented on every span boundary, only ever written by the sampled thread itself.
+		 */
+		private volatile long sequence;
+
+		SampledThread(Thread thread) {
+			this.thread = thread;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package org.test.profiling;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Breaks the time from the start of the JVM to the end of its first test down into consecutive slices. Each
+ * {@link Milestone} is marked the first time the JVM passes it, and the slice that ends at a milestone is the time from
+ * the milestone before it. The slices are recorded once, when the first test ends, in the
+ * {@value TimingTestContextManager#STARTUP} phase with the name of the slice as the listener tag, next to the
+ * {@value TimingTestContextManager#FIRST_TEST} total.
+ *
+ * <p>The milestones follow the path of the first test class: the construction of its runner, the resolution of its
+ * bootstrapper and listeners, the load of the first application context and the first test. The slices are ordered by
+ * the time their milestones were reached, not by the order of {@link Milestone}, so they always add up to the total,
+ * even when a {@link ContextPrewarmer} loads the first context alongside the runners.
+ */
+final class StartupTimeline {
+
+	/**
+	 * The milestones, in the order the first test class usually passes them in.
+	 */
+	enum Milestone {
+
+		/**
+		 * The runner of the first test class is being constructed, ends the start-up of the JVM, the loading of JUnit
+		 * and the discovery of the test classes.
+		 */
+		RUNNER_CONSTRUCTION_STARTED("jvm"),
+
+		/**
+		 * The runner starts to resolve the bootstrapper, ends the construction of the runner up to there, the
+		 * initialization of the {@link TimingTestContextManager} included.
+		 */
+		BOOTSTRAP_STARTED("runnerConstruction"),
+
+		/**
+		 * The bootstrapper and the test context are resolved.
+		 */
+		BOOTSTRAPPER_RESOLVED("bootstrapperResolution"),
+
+		/**
+		 * The test execution listeners are instantiated.
+		 */
+		LISTENERS_INSTANTIATED("listenerInstantiation"),
+
+		/**
+		 * The first application context load starts, ends the construction of the remaining runners and the listener
+		 * callbacks before the context is needed.
+		 */
+		CONTEXT_LOAD_STARTED("remainingRunners"),
+
+		/**
+		 * The component scan starts, ends the preparation of the context: the environment, the initializers and the
+		 * customizers.
+		 */
+		SCAN_STARTED("contextPreparation"),
+
+		/**
+		 * The component scan and the parsing of the configuration classes are done.
+		 */
+		SCAN_ENDED("componentScan"),
+
+		/**
+		 * The bean post-processors are being registered, ends the remaining bean factory post-processors.
+		 */
+		REFRESH_STARTED("beanDefinitions"),
+
+		/**
+		 * The first application context is loaded, ends the instantiation of its singletons.
+		 */
+		CONTEXT_LOAD_ENDED("refresh"),
+
+		/**
+		 * The first test body starts, ends the listener callbacks before it.
+		 */
+		FIRST_TEST_STARTED("testPreparation"),
+
+		/**
+		 * The first test body ends.
+		 */
+		FIRST_TEST_ENDED("firstTestExecution");
+
+		private final String slice;
+
+		Milestone(String slice) {
+			this.slice = slice;
+		}
+
+		/**
+		 * @return the name of the slice that ends at this milestone
+		 */
+		String getSlice() {
+			return slice;
+		}
+
+	}
+
+	private static final AtomicLongArray reachedAt = new AtomicLongArray(Milestone.values().length);
+
+	private StartupTimeline() {
+	}
+
+	/**
+	 * Mark a milestone, unless it was reached before.
+	 * @param milestone the milestone
+	 */
+	static void reached(Milestone milestone) {
+		if (reachedAt.get(milestone.ordinal()) == 0) {
+			reachedAt.compareAndSet(milestone.ordinal(), 0, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Record the slices of the milestones reached so far, called once, when the first test ends.
+	 * @param recorder the recorder
+	 * @param jvmStartNanos the {@link System#nanoTime()} the JVM started at
+	 */
+	static void record(TimingRecorder recorder, long jvmStartNanos) {
+		long previous = jvmStartNanos;
+		for (Milestone milestone : reachedInOrder()) {
+			long reached = reachedAt.get(milestone.ordinal());
+			recorder.record(TimingTestContextManager.STARTUP, milestone.getSlice(), previous,
+					Math.max(0, reached - previous), -1, -1);
+			previous = Math.max(previous, reached);
+		}
+	}
+
+	/**
+	 * Forget the milestones reached so far, so that tests can replay a start-up in a JVM that is already past it.
+	 */
+	static void reset() {
+		for (int i = 0; i < reachedAt.length(); i++) {
+			reachedAt.set(i, 0);
+		}
+	}
+
+	private static Milestone[] reachedInOrder() {
+		return Arrays.stream(Milestone.values()).filter(milestone -> reachedAt.get(milestone.ordinal()) != 0)
+				.sorted(Comparator.comparingLong(milestone -> reachedAt.get(milestone.ordinal())))
+				.toArray(Milestone[]::new);
+	}
+
+}
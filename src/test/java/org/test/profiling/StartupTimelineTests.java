@@ -0,0 +1,85 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.test.profiling.StartupTimeline.Milestone;
+
+class StartupTimelineTests {
+
+	private final List<String> slices = new ArrayList<>();
+
+	private final List<long[]> spans = new ArrayList<>();
+
+	private final TimingRecorder recorder = (phase, listener, startNanos, durationNanos, cpuTimeNanos,
+			allocatedBytes) -> {
+		assertThat(phase).isEqualTo(TimingTestContextManager.STARTUP);
+		slices.add(listener);
+		spans.add(new long[] { startNanos, durationNanos });
+	};
+
+	@BeforeEach
+	@AfterEach
+	void reset() {
+		StartupTimeline.reset();
+	}
+
+	@Test
+	void milestonesAreOnlyMarkedTheFirstTime() throws Exception {
+		long jvmStart = System.nanoTime();
+		StartupTimeline.reached(Milestone.RUNNER_CONSTRUCTION_STARTED);
+		StartupTimeline.reached(Milestone.BOOTSTRAP_STARTED);
+		long firstBootstrapEnded = System.nanoTime();
+		Thread.sleep(5);
+		StartupTimeline.reached(Milestone.RUNNER_CONSTRUCTION_STARTED);
+		StartupTimeline.reached(Milestone.BOOTSTRAP_STARTED);
+		StartupTimeline.record(recorder, jvmStart);
+
+		assertThat(slices).containsExactly("jvm", "runnerConstruction");
+		assertThat(spans.get(1)[0] + spans.get(1)[1]).isLessThanOrEqualTo(firstBootstrapEnded);
+	}
+
+	@Test
+	void slicesFollowTheOrderTheMilestonesWereReachedIn() throws Exception {
+		long jvmStart = System.nanoTime();
+		StartupTimeline.reached(Milestone.RUNNER_CONSTRUCTION_STARTED);
+		// The prewarmer thread loads the first context while the test thread is still constructing runners.
+		CountDownLatch loaded = new CountDownLatch(1);
+		Thread prewarmer = new Thread(() -> {
+			StartupTimeline.reached(Milestone.CONTEXT_LOAD_STARTED);
+			StartupTimeline.reached(Milestone.CONTEXT_LOAD_ENDED);
+			loaded.countDown();
+		});
+		prewarmer.start();
+		loaded.await();
+		StartupTimeline.reached(Milestone.BOOTSTRAP_STARTED);
+		StartupTimeline.reached(Milestone.BOOTSTRAPPER_RESOLVED);
+		// The test thread gets the loaded context from the cache, it does not pass the load milestones again.
+		StartupTimeline.reached(Milestone.CONTEXT_LOAD_STARTED);
+		StartupTimeline.reached(Milestone.CONTEXT_LOAD_ENDED);
+		StartupTimeline.reached(Milestone.FIRST_TEST_STARTED);
+		StartupTimeline.reached(Milestone.FIRST_TEST_ENDED);
+		long firstTestEnded = System.nanoTime();
+		prewarmer.join();
+		StartupTimeline.record(recorder, jvmStart);
+
+		assertThat(slices).containsExactly("jvm", "remainingRunners", "refresh", "runnerConstruction",
+				"bootstrapperResolution", "testPreparation", "firstTestExecution");
+		long previousEnd = jvmStart;
+		long total = 0;
+		for (long[] span : spans) {
+			assertThat(span[0]).isEqualTo(previousEnd);
+			assertThat(span[1]).isNotNegative();
+			previousEnd = span[0] + span[1];
+			total += span[1];
+		}
+		assertThat(jvmStart + total).isLessThanOrEqualTo(firstTestEnded);
+	}
+
+}
@@ -0,0 +1,117 @@
+package org.test.profiling;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.cache.ContextCache;
+import org.springframework.test.context.cache.DefaultCacheAwareContextLoaderDelegate;
+
+/**
+ * A {@link DefaultCacheAwareContextLoaderDelegate} that records every application context that is actually loaded,
+ * that is on a miss of the shared context cache, in the {@value TimingTestContextManager#CONTEXT_LOAD} phase and tells
+ * the {@link LifecycleObserver observers} about it. Cache hits are not reported. The loaded contexts are closed by the
+ * {@link ContextCloser} when the JVM exits, once they are in the cache: a context that lost the race against another
+ * load of the same configuration is closed right away and not handed to it.
+ */
+class TimingContextLoaderDelegate extends DefaultCacheAwareContextLoaderDelegate {
+
+	private static final ThreadLocal<Boolean> loading = ThreadLocal.withInitial(() -> false);
+
+	/**
+	 * The context the current thread has just loaded, until it is in the cache.
+	 */
+	private static final ThreadLocal<ApplicationContext> loadedContext = new ThreadLocal<>();
+
+	private final LifecycleObserver[] observers;
+
+	private final ContextPrewarmer contextPrewarmer;
+
+	private final ContextCloser contextCloser;
+
+	TimingContextLoaderDelegate(LifecycleObserver[] observers, ContextPrewarmer contextPrewarmer,
+			ContextCloser contextCloser) {
+		this.observers = observers;
+		this.contextPrewarmer = contextPrewarmer;
+		this.contextCloser = contextCloser;
+	}
+
+	/**
+	 * @return whether the current thread is loading an application context through a
+	 * {@code TimingContextLoaderDelegate}, so that {@link ContextLoadTiming} only times the steps of those loads
+	 */
+	static boolean isLoading() {
+		return loading.get();
+	}
+
+	/**
+	 * Wait for the {@link ContextPrewarmer} if it is loading the context in the background, then look the context up
+	 * in the cache as usual. A context loaded on a miss is put in the cache before the lock is released, it is
+	 * handed to the {@link ContextCloser} under the same lock.
+	 */
+	@Override
+	public ApplicationContext loadContext(MergedContextConfiguration mergedContextConfiguration) {
+		contextPrewarmer.awaitPrewarm(mergedContextConfiguration);
+		synchronized (getContextCache()) {
+			try {
+				ApplicationContext context = super.loadContext(mergedContextConfiguration);
+				if (loadedContext.get() == context) {
+					contextCloser.register(mergedContextConfiguration, context);
+				}
+				return context;
+			} finally {
+				loadedContext.remove();
+			}
+		}
+	}
+
+	/**
+	 * Load a context without holding the lock of the context cache, so that other threads can use the cache in the
+	 * meantime, and add it to the cache. If another thread added the same context first, the one loaded here is closed
+	 * again.
+	 */
+	void loadContextInBackground(MergedContextConfiguration mergedContextConfiguration) throws Exception {
+		ApplicationContext context;
+		try {
+			context = loadContextInternal(mergedContextConfiguration);
+		} finally {
+			loadedContext.remove();
+		}
+		ContextCache contextCache = getContextCache();
+		synchronized (contextCache) {
+			if (!contextCache.contains(mergedContextConfiguration)) {
+				contextCache.put(mergedContextConfiguration, context);
+				contextCloser.register(mergedContextConfiguration, context);
+				return;
+			}
+		}
+		if (context instanceof ConfigurableApplicationContext) {
+			((ConfigurableApplicationContext) context).close();
+		}
+	}
+
+	@Override
+	protected ApplicationContext loadContextInternal(MergedContextConfiguration mergedContextConfiguration)
+			throws Exception {
+
+		for (LifecycleObserver observer : observers) {
+			observer.contextLoadStarted(mergedContextConfiguration);
+		}
+		StartupTimeline.reached(StartupTimeline.Milestone.CONTEXT_LOAD_STARTED);
+		long[] start = TimingTestContextManager.startSpan();
+		loading.set(true);
+		try {
+			ApplicationContext context = super.loadContextInternal(mergedContextConfiguration);
+			loadedContext.set(context);
+			return context;
+		} finally {
+			loading.set(false);
+			StartupTimeline.reached(StartupTimeline.Milestone.CONTEXT_LOAD_ENDED);
+			long end = TimingTestContextManager.recordSpan(TimingTestContextManager.CONTEXT_LOAD,
+					mergedContextConfiguration.getContextLoader().getClass().getSimpleName(), start);
+			for (LifecycleObserver observer : observers) {
+				observer.contextLoadEnded(mergedContextConfiguration, start[0], end);
+			}
+		}
+	}
+
+}
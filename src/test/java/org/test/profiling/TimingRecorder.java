@@ -0,0 +1,33 @@
+package org.test.profiling;
+
+/**
+ * Where {@link TimingTestContextManager} puts the samples it takes. Implementations must be safe to call from several
+ * test threads at once.
+ */
+interface TimingRecorder {
+
+	/**
+	 * Record one listener callback.
+	 * @param phase the lifecycle phase, for example {@code beforeTestMethod}
+	 * @param listener the simple name of the listener class
+	 * @param startNanos the {@link System#nanoTime()} the callback started at
+	 * @param durationNanos the wall-clock time the callback took
+	 * @param cpuTimeNanos the CPU time the callback used, negative if not available
+	 * @param allocatedBytes the bytes the callback allocated, negative if not available
+	 */
+	void record(String phase, String listener, long startNanos, long durationNanos, long cpuTimeNanos,
+			long allocatedBytes);
+
+	/**
+	 * Make sure everything recorded so far has reached the meter registry.
+	 */
+	default void flush() {
+	}
+
+	/**
+	 * Flush and release any resources, called when the JVM exits.
+	 */
+	default void close() {
+	}
+
+}
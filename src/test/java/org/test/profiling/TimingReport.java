@@ -0,0 +1,403 @@
+package org.test.profiling;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.lang.Nullable;
+import org.test.profiling.suite.TimingRecord;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * The timing report of {@link TimingTestContextManager}: per phase and listener the raw and the corrected timings,
+ * printed to the console or written as CSV. It only needs the meter registry the samples were recorded into, so it can
+ * also be rebuilt from an {@link EventLogReader event log}.
+ */
+class TimingReport {
+
+	/**
+	 * The listener phases, preceded by the start-up of the JVM, the resolution of the test class's configuration and
+	 * the application context loads, which are nested in the listener callback that first asked for the context, and
+	 * followed by the closing of the application contexts when the JVM exits.
+	 */
+	private static final List<String> reportedPhases = createReportedPhases();
+
+	private final MeterRegistry registry;
+
+	private final long measurementFloorNanos;
+
+	/**
+	 * @param registry the registry the samples were recorded into
+	 * @param measurementFloorNanos the measurement floor to correct the timings with, {@code 0} for none
+	 */
+	TimingReport(MeterRegistry registry, long measurementFloorNanos) {
+		this.registry = registry;
+		this.measurementFloorNanos = measurementFloorNanos;
+	}
+
+	private static List<String> createReportedPhases() {
+		List<String> phases = new ArrayList<>();
+		phases.add(TimingTestContextManager.STARTUP);
+		phases.add(TimingTestContextManager.BOOTSTRAP);
+		phases.add(TimingTestContextManager.CONTEXT_LOAD);
+		phases.addAll(TimingTestContextManager.PHASES);
+		phases.add(TimingTestContextManager.CONTEXT_CLOSE);
+		phases.add(TimingTestContextManager.SHUTDOWN);
+		return phases;
+	}
+
+	/**
+	 * Print the timings of every phase and listener, followed by the GC time per phase and the listener caches.
+	 */
+	void print() {
+		for (String phase : reportedPhases) {
+			System.out.println("------------------------------------------------------------------------------------------------");
+			for (Timer timer : registry.find(phase).timers()) {
+				logTimer(phase, timer);
+			}
+		}
+		logStartup();
+		logGcTime();
+		logCaches();
+		logContextPrewarm();
+	}
+
+	/**
+	 * Print the time to the first test broken down into the slices of the {@link StartupTimeline}, in the order of its
+	 * milestones, with the share of each slice and the largest one marked.
+	 */
+	private void logStartup() {
+		Timer firstTest = registry.find(TimingTestContextManager.STARTUP)
+				.tag("listener", TimingTestContextManager.FIRST_TEST).timer();
+		if (firstTest == null) {
+			return;
+		}
+		double total = firstTest.totalTime(TimeUnit.MILLISECONDS);
+		Map<String, Double> slices = new LinkedHashMap<>();
+		for (StartupTimeline.Milestone milestone : StartupTimeline.Milestone.values()) {
+			Timer slice = registry.find(TimingTestContextManager.STARTUP).tag("listener", milestone.getSlice()).timer();
+			if (slice != null) {
+				slices.put(milestone.getSlice(), slice.totalTime(TimeUnit.MILLISECONDS));
+			}
+		}
+		Double firstTestExecution = slices.remove(StartupTimeline.Milestone.FIRST_TEST_ENDED.getSlice());
+		String largest = slices.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey)
+				.orElse(null);
+		System.out.println("------------------------------------------------------------------------------------------------");
+		System.out.println(String.format("Time to first test: %1$.1fms", total));
+		slices.forEach((slice, time) -> System.out.println(String.format("  %1$-25s %2$10.1fms %3$5.1f%%%4$s", slice,
+				time, total > 0 ? time * 100 / total : 0, slice.equals(largest) ? " <- largest" : "")));
+		if (firstTestExecution != null) {
+			System.out.println(String.format("First test execution: %1$.1fms", firstTestExecution));
+		}
+	}
+
+	/**
+	 * Print the time spent in GC pauses per phase, the test body included.
+	 */
+	private void logGcTime() {
+		List<String> phases = new ArrayList<>(TimingTestContextManager.PHASES);
+		phases.add(LifecycleObserver.TEST_EXECUTION);
+		System.out.println("------------------------------------------------------------------------------------------------");
+		for (String phase : phases) {
+			Collection<Timer> gcTimers = registry.find(phase + ".gc").timers();
+			if (!gcTimers.isEmpty()) {
+				System.out.println(String.format("%1$-20s GC Time: %2$15fms in %3$d spans", phase,
+						gcTimers.stream().mapToDouble(gcTimer -> gcTimer.totalTime(TimeUnit.MILLISECONDS)).sum(),
+						gcTimers.stream().mapToLong(Timer::count).sum()));
+			}
+		}
+	}
+
+	/**
+	 * Print the hit and miss counts of the {@code listener.cache} counters that listeners register, if they were used.
+	 */
+	private void logCaches() {
+		Map<String, double[]> caches = new TreeMap<>();
+		for (FunctionCounter counter : registry.find("listener.cache").functionCounters()) {
+			double[] hitsAndMisses = caches.computeIfAbsent(
+					counter.getId().getTag("listener") + "." + counter.getId().getTag("cache"), key -> new double[2]);
+			hitsAndMisses["hit".equals(counter.getId().getTag("result")) ? 0 : 1] += counter.count();
+		}
+		if (caches.values().stream().allMatch(hitsAndMisses -> hitsAndMisses[0] + hitsAndMisses[1] == 0)) {
+			return;
+		}
+		System.out.println("------------------------------------------------------------------------------------------------");
+		caches.forEach((cache, hitsAndMisses) -> {
+			double lookups = hitsAndMisses[0] + hitsAndMisses[1];
+			if (lookups > 0) {
+				System.out.println(String.format("%1$-75s Hits: %2$10.0f, Misses: %3$10.0f, Hit Ratio: %4$6.2f%%",
+						cache, hitsAndMisses[0], hitsAndMisses[1], hitsAndMisses[0] * 100 / lookups));
+			}
+		});
+	}
+
+	/**
+	 * Print how many application contexts the {@link ContextPrewarmer} loaded in the background and how many the
+	 * {@link ContextCloser} closed, if any.
+	 */
+	private void logContextPrewarm() {
+		Map<String, Map<String, Double>> loads = new TreeMap<>();
+		for (String name : Arrays.asList("context.prewarm", "context.preload", "context.close")) {
+			for (Counter counter : registry.find(name).counters()) {
+				loads.computeIfAbsent(name, key -> new TreeMap<>()).put(counter.getId().getTag("result"), counter.count());
+			}
+		}
+		if (loads.isEmpty()) {
+			return;
+		}
+		System.out.println("------------------------------------------------------------------------------------------------");
+		loads.forEach((name, results) -> System.out.println(String.format("%1$-20s %2$s", name,
+				results.entrySet().stream().map(result -> String.format("%1$s: %2$.0f", result.getKey(), result.getValue()))
+						.collect(Collectors.joining(", ")))));
+	}
+
+	/**
+	 * Print every listener that was replaced or dropped and what that saved: the mean the listener took per callback in
+	 * the baseline run, times the number of callbacks in this run, less what its replacement took in this run.
+	 * @param changes the simple name of every changed listener, mapped to its replacement or empty if it was dropped
+	 * @param baseline the report of a run without the changes, {@code null} if there is none
+	 */
+	void printListenerChanges(Map<String, Optional<String>> changes, @Nullable List<TimingRecord> baseline) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		System.out.println("------------------------------------------------------------------------------------------------");
+		double totalSaved = 0;
+		for (Map.Entry<String, Optional<String>> change : changes.entrySet()) {
+			String listener = change.getKey();
+			String description = change.getValue().map(replacement -> "Replaced " + listener + " with " + replacement)
+					.orElse("Removed " + listener);
+			if (baseline == null) {
+				System.out.println(description + " (set " + TimingTestContextManager.LISTENER_BASELINE_PROPERTY
+						+ " to the report of a run without the change to see its savings)");
+				continue;
+			}
+			double saved = 0;
+			for (String phase : TimingTestContextManager.PHASES) {
+				double baselineMean = TimingRecord.mean(baseline, phase, listener);
+				if (!Double.isNaN(baselineMean)) {
+					saved += baselineMean * callbacks(phase);
+				}
+				if (change.getValue().isPresent()) {
+					Timer replacement = registry.find(phase).tag("listener", change.getValue().get()).timer();
+					saved -= replacement == null ? 0 : replacement.totalTime(TimeUnit.MILLISECONDS);
+				}
+			}
+			totalSaved += saved;
+			System.out.println(String.format("%1$-100s Saved: %2$15fms", description, saved));
+		}
+		if (baseline != null) {
+			System.out.println(String.format("%1$-100s Saved: %2$15fms", "All listener changes", totalSaved));
+		}
+	}
+
+	/**
+	 * Print, for every listener that {@link NoOpListenerDetection} found to do nothing for some test classes, how many
+	 * of them and how many callbacks were skipped and what that saved: the listener's mean per callback in the baseline
+	 * run, or in this run if the listeners were not skipped, times the number of callbacks. Then list the listeners
+	 * without a rule that stayed below the measurement floor in every phase, they are candidates for excluding.
+	 * @param skipped whether the listeners were skipped or only counted
+	 * @param baseline the report of a run that did not skip them, {@code null} if there is none
+	 */
+	void printNoOpListeners(boolean skipped, @Nullable List<TimingRecord> baseline) {
+		System.out.println("------------------------------------------------------------------------------------------------");
+		Map<String, Map<String, Double>> noOpCallbacks = new TreeMap<>();
+		for (Counter counter : registry.find("listener.no-op.test-classes").counters()) {
+			noOpCallbacks.put(counter.getId().getTag("listener"), new TreeMap<>());
+		}
+		for (Counter counter : registry.find("listener.no-op").counters()) {
+			noOpCallbacks.get(counter.getId().getTag("listener")).put(counter.getId().getTag("phase"), counter.count());
+		}
+		double testClasses = registry.get("listener.no-op.analyzed-test-classes").counter().count();
+		double totalSaved = 0;
+		for (Map.Entry<String, Map<String, Double>> entry : noOpCallbacks.entrySet()) {
+			String listener = entry.getKey();
+			double callbacks = entry.getValue().values().stream().mapToDouble(Double::doubleValue).sum();
+			String description = String.format("%1$s %2$s in %3$.0f of %4$.0f test classes, %5$.0f callbacks", listener,
+					skipped ? "skipped" : "does nothing",
+					registry.get("listener.no-op.test-classes").tag("listener", listener).counter().count(), testClasses,
+					callbacks);
+			if (skipped && baseline == null) {
+				System.out.println(description);
+				continue;
+			}
+			double saved = 0;
+			for (Map.Entry<String, Double> phase : entry.getValue().entrySet()) {
+				double mean = skipped ? TimingRecord.mean(baseline, phase.getKey(), listener) : mean(phase.getKey(), listener);
+				if (!Double.isNaN(mean)) {
+					saved += mean * phase.getValue();
+				}
+			}
+			totalSaved += saved;
+			System.out.println(String.format("%1$-100s %2$s: %3$15fms", description, skipped ? "Saved" : "Would save",
+					saved));
+		}
+		if (skipped && baseline == null) {
+			System.out.println("(set " + TimingTestContextManager.LISTENER_BASELINE_PROPERTY
+					+ " to the report of a run without skipping to see the savings)");
+		}
+		else {
+			System.out.println(String.format("%1$-100s %2$s: %3$15fms", "All no-op listeners",
+					skipped ? "Saved" : "Would save", totalSaved));
+		}
+
+		Map<String, Boolean> belowFloor = new TreeMap<>();
+		for (String phase : TimingTestContextManager.PHASES) {
+			for (Timer timer : registry.find(phase).timers()) {
+				belowFloor.merge(timer.getId().getTag("listener"), isBelowMeasurementFloor(phase, timer), Boolean::logicalAnd);
+			}
+		}
+		belowFloor.forEach((listener, below) -> {
+			if (below && !NoOpListenerDetection.hasRule(listener)) {
+				System.out.println(listener + " stayed below the measurement floor in every phase, but cannot be proven"
+						+ " to do nothing: check whether the suite needs it, then consider adding it to "
+						+ CachingTransactionalTestExecutionListener.EXCLUDED_LISTENERS_PROPERTY);
+			}
+		});
+	}
+
+	/**
+	 * @return the mean time of a listener in a phase of this run in milliseconds, {@code NaN} if it was not recorded
+	 */
+	private double mean(String phase, String listener) {
+		Timer timer = registry.find(phase).tag("listener", listener).timer();
+		return timer == null ? Double.NaN : timer.mean(TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of callbacks of a phase, which every listener gets the same number of
+	 */
+	private long callbacks(String phase) {
+		return registry.find(phase).timers().stream().mapToLong(Timer::count).max().orElse(0);
+	}
+
+	/**
+	 * Write one CSV row per phase and listener, all times in milliseconds.
+	 */
+	void write(Path file) {
+		try {
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+				writer.println("phase,listener,count,total,mean,max,p50,p75,p90,corrected_mean,below_floor,cpu_mean,allocated_mean,gc_total");
+				for (String phase : reportedPhases) {
+					for (Timer timer : registry.find(phase).timers()) {
+						writer.print(phase + "," + timer.getId().getTag("listener") + "," + timer.count() + ",");
+						writer.print(timer.totalTime(TimeUnit.MILLISECONDS) + "," + timer.mean(TimeUnit.MILLISECONDS)
+								+ "," + timer.max(TimeUnit.MILLISECONDS));
+						for (ValueAtPercentile valueAtPercentile : timer.takeSnapshot().percentileValues()) {
+							writer.print("," + valueAtPercentile.value(TimeUnit.MILLISECONDS));
+						}
+						writer.print("," + corrected(excludingGc(phase, timer).mean(TimeUnit.MILLISECONDS)) + ","
+								+ isBelowMeasurementFloor(phase, timer));
+						writer.println("," + cpuMean(phase, timer) + "," + allocatedMean(phase, timer) + ","
+								+ gcTotal(phase, timer));
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to write the timing report to " + file + ": " + e);
+		}
+	}
+	
+	private void logTimer(String name, Timer timer) {
+		Double totalTime = timer.totalTime(TimeUnit.MILLISECONDS);
+		System.out.print(String.format("%1$-20s ", name));
+		System.out.print(String.format("%1$55s - ", timer.getId().getTag("listener")));
+		System.out.print(String.format("Total Time: %1$15fms, ", totalTime));
+		System.out.print(String.format("Count: %1$-8d, ", timer.count()));
+		System.out.print(String.format("Mean: %1$20fms, ", totalTime / timer.count()));
+		System.out.print(String.format("Max: %1$12fms, ", timer.max(TimeUnit.MILLISECONDS)));
+		ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+		System.out.print("Percentiles: ");
+		for (ValueAtPercentile valueAtPercentile : percentiles) {
+			System.out.print(String.format("(%1$10fms at %2$2d" , valueAtPercentile.value(TimeUnit.MILLISECONDS), (int)(valueAtPercentile.percentile() * 100)) + "%)");
+		}
+		Timer excludingGc = excludingGc(name, timer);
+		System.out.print(String.format(", Corrected Mean: %1$20fms, ", corrected(excludingGc.mean(TimeUnit.MILLISECONDS))));
+		System.out.print("Corrected Percentiles: ");
+		for (ValueAtPercentile valueAtPercentile : excludingGc.takeSnapshot().percentileValues()) {
+			System.out.print(String.format("(%1$10fms at %2$2d" , corrected(valueAtPercentile.value(TimeUnit.MILLISECONDS)), (int)(valueAtPercentile.percentile() * 100)) + "%)");
+		}
+		System.out.print(String.format(", CPU Mean: %1$20fms, ", cpuMean(name, timer)));
+		System.out.print(String.format("Allocated Mean: %1$14.0f bytes, ", allocatedMean(name, timer)));
+		System.out.print(String.format("GC Time: %1$15fms", gcTotal(name, timer)));
+		if (isBelowMeasurementFloor(name, timer)) {
+			System.out.print(" [BELOW MEASUREMENT FLOOR]");
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * @return the mean CPU time, in milliseconds, of the listener that the wall-clock timer belongs to, {@code NaN} if
+	 * it is not available.
+	 */
+	private double cpuMean(String name, Timer timer) {
+		Timer cpuTimer = registry.find(name + ".cpu").tags(timer.getId().getTags()).timer();
+		return cpuTimer == null ? Double.NaN : cpuTimer.mean(TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the mean number of bytes allocated by the listener that the wall-clock timer belongs to, {@code NaN} if
+	 * it is not available.
+	 */
+	private double allocatedMean(String name, Timer timer) {
+		DistributionSummary summary = registry.find(name + ".allocated").tags(timer.getId().getTags()).summary();
+		return summary == null ? Double.NaN : summary.mean();
+	}
+
+	/**
+	 * @return the timer of the same listener with GC pauses taken out, or the timer itself if GC attribution is off.
+	 * The corrected numbers are based on this one.
+	 */
+	private Timer excludingGc(String name, Timer timer) {
+		Timer excludingGc = registry.find(name + ".excluding-gc").tags(timer.getId().getTags()).timer();
+		return excludingGc == null ? timer : excludingGc;
+	}
+
+	/**
+	 * @return the total GC pause time, in milliseconds, that overlapped the listener that the timer belongs to.
+	 */
+	private double gcTotal(String name, Timer timer) {
+		Timer gcTimer = registry.find(name + ".gc").tags(timer.getId().getTags()).timer();
+		return gcTimer == null ? 0 : gcTimer.totalTime(TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param millis a raw time in milliseconds
+	 * @return the time with the measurement floor subtracted, never negative
+	 */
+	private double corrected(double millis) {
+		return Math.max(0, millis - measurementFloorNanos / 1_000_000d);
+	}
+
+	/**
+	 * A listener whose median does not rise above the floor, whose corrected median is zero, cannot be told apart from
+	 * one that does nothing. The median is used rather than the mean, which the first, cold invocations easily
+	 * dominate.
+	 */
+	boolean isBelowMeasurementFloor(String name, Timer timer) {
+		ValueAtPercentile median = excludingGc(name, timer).takeSnapshot().percentileValues()[0];
+		return measurementFloorNanos > 0 && median.value(TimeUnit.NANOSECONDS) <= measurementFloorNanos;
+	}
+
+}
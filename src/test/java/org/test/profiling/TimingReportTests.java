@@ -0,0 +1,41 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TimingReportTests {
+
+	private static final long MEASUREMENT_FLOOR_NANOS = 1000;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MeterRecorder recorder = new MeterRecorder(registry);
+
+	private final TimingReport report = new TimingReport(registry, MEASUREMENT_FLOOR_NANOS);
+
+	@Test
+	void listenersWhoseMedianDoesNotRiseAboveTheFloorAreFlagged() {
+		assertThat(isBelowMeasurementFloor("NoOp", 400)).isTrue();
+		assertThat(isBelowMeasurementFloor("JustBelowTheFloor", 900)).isTrue();
+	}
+
+	@Test
+	void listenersWhoseMedianRisesAboveTheFloorAreNotFlagged() {
+		// Less than twice the floor, a corrected median smaller than the floor itself is still a real cost.
+		assertThat(isBelowMeasurementFloor("Cheap", 1600)).isFalse();
+		assertThat(isBelowMeasurementFloor("Expensive", 50_000)).isFalse();
+	}
+
+	private boolean isBelowMeasurementFloor(String listener, long durationNanos) {
+		for (int i = 0; i < 1000; i++) {
+			recorder.record("beforeTestMethod", listener, 0, durationNanos, -1, -1);
+		}
+		Timer timer = registry.get("beforeTestMethod").tag("listener", listener).timer();
+		return report.isBelowMeasurementFloor("beforeTestMethod", timer);
+	}
+
+}
@@ -1,22 +1,36 @@
 package org.test.profiling;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.lang.Nullable;
+import org.springframework.test.context.BootstrapContext;
+import org.springframework.test.context.TestContext;
 import org.springframework.test.context.TestContextBootstrapper;
 import org.springframework.test.context.TestContextManager;
 import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.cache.DefaultCacheAwareContextLoaderDelegate;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.util.unit.DataSize;
+import org.test.profiling.suite.TimingRecord;
 
-import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
@@ -24,74 +38,556 @@ public class TimingTestContextManager extends TestContextManager {
 	
 	private static final Log logger = LogFactory.getLog(TimingTestContextManager.class);
 	
+	/**
+	 * When set, the timings are also written to this file as CSV when the JVM exits, so that tools that run the suite
+	 * in a forked JVM can collect them.
+	 */
+	public static final String REPORT_FILE_PROPERTY = "profiling.report.file";
+
+	static final List<String> PHASES = Arrays.asList("beforeTestClass", "prepareTestInstance", "beforeTestMethod",
+			"beforeTestExecution", "afterTestExecution", "afterTestMethod");
+
+	// The indexes of the phases in PHASES.
+	private static final int BEFORE_TEST_CLASS = 0;
+	private static final int PREPARE_TEST_INSTANCE = 1;
+	private static final int BEFORE_TEST_METHOD = 2;
+	private static final int BEFORE_TEST_EXECUTION = 3;
+	private static final int AFTER_TEST_EXECUTION = 4;
+	private static final int AFTER_TEST_METHOD = 5;
+
+	/**
+	 * The number of no-op callbacks that are timed at startup to find the measurement floor, for example
+	 * {@code 10000}. Defaults to {@code 0}, which leaves the calibration and the corrected timings out.
+	 */
+	public static final String CALIBRATION_ITERATIONS_PROPERTY = "profiling.calibration.iterations";
+
+	/**
+	 * Set to {@code true} to attribute garbage collection pauses to phases, see {@link GcPauseAttribution}.
+	 */
+	public static final String GC_ATTRIBUTION_PROPERTY = "profiling.gc-attribution.enabled";
+
+	/**
+	 * Set to {@code true} to emit JDK Flight Recorder events, see {@link FlightRecorderEvents}.
+	 */
+	public static final String JFR_EVENTS_PROPERTY = "profiling.jfr.enabled";
+
+	/**
+	 * How often to sample the stacks of the test threads, for example {@code 5ms}. The {@link StackSampler} is only
+	 * started when this is set.
+	 */
+	public static final String SAMPLER_INTERVAL_PROPERTY = "profiling.sampler.interval";
+
+	/**
+	 * Where the {@link StackSampler} writes its folded stacks, defaults to {@code target/profiling/stacks}.
+	 */
+	public static final String SAMPLER_OUTPUT_PROPERTY = "profiling.sampler.output";
+
+	/**
+	 * Set to {@code true} to stream every span to a Chrome Trace Event file, see {@link ChromeTraceExporter}.
+	 */
+	public static final String TRACE_ENABLED_PROPERTY = "profiling.trace.enabled";
+
+	/**
+	 * Where the {@link ChromeTraceExporter} writes its trace, defaults to {@code target/profiling/traces}.
+	 */
+	public static final String TRACE_OUTPUT_PROPERTY = "profiling.trace.output";
+
+	/**
+	 * The name of this JVM in the trace and the name of the trace file, defaults to {@code pid-<pid>}.
+	 */
+	public static final String TRACE_PROCESS_NAME_PROPERTY = "profiling.trace.process-name";
+
+	/**
+	 * How the samples get into the meter registry: {@code micrometer} (the default) or {@code ring-buffer}, see
+	 * {@link Recording}.
+	 */
+	public static final String RECORDING_PROPERTY = "profiling.recording";
+
+	/**
+	 * The number of samples each test thread's ring buffer holds, defaults to 16384.
+	 */
+	public static final String RING_BUFFER_CAPACITY_PROPERTY = "profiling.ring-buffer.capacity";
+
+	/**
+	 * Set to {@code false} to stop reading the CPU time and allocation counters of the test thread around every
+	 * callback. Those reads are the bulk of what the instrumentation costs per callback.
+	 */
+	public static final String THREAD_COUNTERS_PROPERTY = "profiling.thread-counters.enabled";
+
+	/**
+	 * When set, every sample is also appended to this memory-mapped file as it is taken, so that the timings survive a
+	 * fork that crashes or is killed, see {@link MappedEventLog} and {@link EventLogReader}. The file is replaced, so
+	 * when all forks get the same property it should contain {@value #PID_PLACEHOLDER}, which is replaced by the pid of
+	 * the fork, for example {@code target/profiling/events/{pid}.events}.
+	 */
+	public static final String EVENT_LOG_FILE_PROPERTY = "profiling.event-log.file";
+
+	static final String PID_PLACEHOLDER = "{pid}";
+
+	/**
+	 * The size the event log file is preallocated to, for example {@code 256MB}, defaults to {@code 64MB}. Every sample
+	 * takes 48 bytes.
+	 */
+	public static final String EVENT_LOG_SIZE_PROPERTY = "profiling.event-log.size";
+
+	/**
+	 * The CSV report of a run without the listener changes of
+	 * {@link CachingTransactionalTestExecutionListener.PostProcessor}. When set, the report shows how much time every
+	 * replaced or dropped listener saved compared to it.
+	 */
+	public static final String LISTENER_BASELINE_PROPERTY = "profiling.listeners.baseline";
+
+	/**
+	 * What to do with the listeners that provably do nothing for a test class, see {@link NoOpListenerDetection}:
+	 * {@code off} (the default), {@code report} to only count the callbacks that could be skipped, or {@code skip} to
+	 * remove the listeners from the test class.
+	 */
+	public static final String NO_OP_LISTENERS_PROPERTY = "profiling.listeners.no-op-detection";
+
+	/**
+	 * Set to {@code false} to resolve the bootstrapper, merged context configuration and listeners of every test class
+	 * on its own, rather than once per distinct configuration, see {@link BootstrapCache}.
+	 */
+	public static final String BOOTSTRAP_CACHE_PROPERTY = "profiling.bootstrap-cache.enabled";
+
+	/**
+	 * Set to {@code false} to ignore the index the build writes of the lifecycle metadata of every test class and find
+	 * it by reflection instead, see {@link LifecycleMetadataIndex}.
+	 */
+	public static final String METADATA_INDEX_PROPERTY = "profiling.metadata-index.enabled";
+
+	/**
+	 * How many distinct application contexts to load on a background thread as soon as the test classes that need them
+	 * are bootstrapped, see {@link ContextPrewarmer}. Defaults to {@code 0}, which turns pre-warming off.
+	 */
+	public static final String PREWARM_CONTEXTS_PROPERTY = "profiling.prewarm.contexts";
+
+	/**
+	 * How many contexts {@link ContextPrewarmer} may preload ahead of the test classes that need them and keep alive
+	 * until those test classes ask for them. Defaults to {@code 0}, which turns preloading off.
+	 */
+	public static final String PRELOAD_CONTEXTS_PROPERTY = "profiling.preload.contexts";
+
+	/**
+	 * The share of the maximum heap above which no contexts are preloaded, defaults to {@code 0.75}.
+	 */
+	public static final String PRELOAD_MAX_HEAP_USAGE_PROPERTY = "profiling.preload.max-heap-usage";
+
+	/**
+	 * When set, the order the test classes ran in is written to this file when the JVM exits, and the next run
+	 * preloads contexts by it. Without it, the test classes are expected to run in the order they are bootstrapped
+	 * in.
+	 */
+	public static final String PRELOAD_ORDER_FILE_PROPERTY = "profiling.preload.order-file";
+
+	/**
+	 * How many application contexts {@link ContextCloser} closes at the same time when the JVM exits, defaults to
+	 * {@code 1}, which closes them one after the other.
+	 */
+	public static final String CLOSE_THREADS_PROPERTY = "profiling.shutdown.close-threads";
+
+	/**
+	 * How long to wait for the application contexts to be closed when the JVM exits, for example {@code 10s}. Defaults
+	 * to {@code 30s}.
+	 */
+	public static final String CLOSE_TIMEOUT_PROPERTY = "profiling.shutdown.close-timeout";
+
+	/**
+	 * The phase the resolution of a test class's bootstrapper, merged context configuration and listeners is
+	 * reported under. The listener tag is the bootstrapper, with {@code (cached)} appended if the resolution was copied
+	 * from another test class.
+	 */
+	static final String BOOTSTRAP = "bootstrap";
+
+	/**
+	 * The phase application context loads are reported under, that is misses of the context cache. The listener tag is
+	 * the context loader for the load as a whole and the step for the parts of it that {@link ContextLoadTiming} times.
+	 */
+	static final String CONTEXT_LOAD = "contextLoad";
+
+	/**
+	 * The phase the start-up of the JVM is reported under, measured from the start of the JVM.
+	 */
+	static final String STARTUP = "startup";
+
+	/**
+	 * The listener tag of the time from the start of the JVM to the start of the first test body. The
+	 * {@link StartupTimeline} breaks it down into slices reported in the same phase.
+	 */
+	static final String FIRST_TEST = "firstTest";
+
+	/**
+	 * The phase the closing of the application contexts that are still cached when the JVM exits is reported under. The
+	 * listener tag is the test class the context was loaded for.
+	 */
+	static final String CONTEXT_CLOSE = "contextClose";
+
+	/**
+	 * The phase the tear-down of the JVM is reported under.
+	 */
+	static final String SHUTDOWN = "shutdown";
+
+	/**
+	 * The listener tag of the time it took to close all application contexts when the JVM exits.
+	 */
+	static final String CLOSE_CONTEXTS = "closeContexts";
+
+	/**
+	 * How {@link TimingTestContextManager} gets its samples into the meter registry.
+	 */
+	public enum Recording {
+
+		/**
+		 * Update the Micrometer meters on the test thread, see {@link MeterRecorder}.
+		 */
+		MICROMETER,
+
+		/**
+		 * Write the samples into a lock-free ring buffer per test thread and update the meters on a background thread,
+		 * see {@link RingBufferRecorder}.
+		 */
+		RING_BUFFER
+	}
+
 	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
-	private static final List<String> includeListeners = Arrays.asList("CachingTransactionalTestExecutionListener", "TransactionalTestExecutionListener");
 
-	static {
-		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-			Collection<Timer> timers = registry.get("beforeTestClass").timers();
+	private static final Recording defaultRecording = Recording
+			.valueOf(System.getProperty(RECORDING_PROPERTY, "micrometer").toUpperCase().replace('-', '_'));
 
-			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {				
-				logTimer("beforeTestClass", timer);
+	private static final NoOpListenerDetection.Mode noOpListenerMode = NoOpListenerDetection.Mode
+			.valueOf(System.getProperty(NO_OP_LISTENERS_PROPERTY, "off").toUpperCase());
+
+	/**
+	 * {@code BootstrapUtils.resolveTestContextBootstrapper(BootstrapContext)}, {@code null} if a Spring version does not
+	 * have it.
+	 */
+	@Nullable
+	private static final Method resolveTestContextBootstrapperMethod = findResolveTestContextBootstrapper();
+
+	private static final BootstrapCache bootstrapCache = new BootstrapCache(
+			!"false".equals(System.getProperty(BOOTSTRAP_CACHE_PROPERTY)));
+
+	private static final ContextCloser contextCloser = new ContextCloser(Integer.getInteger(CLOSE_THREADS_PROPERTY, 1),
+			DurationStyle.detectAndParse(System.getProperty(CLOSE_TIMEOUT_PROPERTY, "30s")), registry);
+
+	private static final ContextPrewarmer contextPrewarmer = new ContextPrewarmer(
+			Integer.getInteger(PREWARM_CONTEXTS_PROPERTY, 0), Integer.getInteger(PRELOAD_CONTEXTS_PROPERTY, 0),
+			Double.parseDouble(System.getProperty(PRELOAD_MAX_HEAP_USAGE_PROPERTY, "0.75")),
+			System.getProperty(PRELOAD_ORDER_FILE_PROPERTY) != null
+					? Paths.get(System.getProperty(PRELOAD_ORDER_FILE_PROPERTY)) : null,
+			contextCloser, registry, testClass -> bootstrapCache.bootstrap(testClass, new DefaultCacheAwareContextLoaderDelegate(),
+					TimingTestContextManager::createTestContextBootstrapper).buildMergedContextConfiguration());
+
+	/**
+	 * The {@link System#nanoTime()} the JVM started at, give or take the millisecond resolution of its uptime.
+	 */
+	private static final long jvmStartNanos = System.nanoTime()
+			- TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+
+	private static final AtomicBoolean firstTestStarted = new AtomicBoolean();
+
+	private static final AtomicBoolean firstTestEnded = new AtomicBoolean();
+
+	@Nullable
+	private static final MappedEventLog eventLog = createEventLog();
+
+	private static final TimingRecorder meterRecorder = logged(new MeterRecorder(registry));
+
+	private static final TimingRecorder ringBufferRecorder = logged(createRecorder(Recording.RING_BUFFER, registry));
+
+	/**
+	 * Used to tell a listener that burns CPU or allocates heavily apart from one that waits on a socket or a lock. The
+	 * allocated bytes are a HotSpot extension, the {@code com.sun.management} interface is not available everywhere.
+	 */
+	private static final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = enableCpuTime();
+	private static final boolean allocatedBytesSupported = enableAllocatedBytes();
+
+	private static final LifecycleObserver[] NO_OBSERVERS = new LifecycleObserver[0];
+
+	private static final TestExecutionListener[] NO_LISTENERS = new TestExecutionListener[0];
+
+	/**
+	 * Per listener class and phase, in the order of {@link #PHASES}, whether the listener overrides the phase's
+	 * callback. Computed once per listener class.
+	 */
+	private static final ClassValue<boolean[]> overriddenCallbacks = new ClassValue<boolean[]>() {
+
+		@Override
+		protected boolean[] computeValue(Class<?> listenerClass) {
+			boolean[] overridden = new boolean[PHASES.size()];
+			for (int phase = 0; phase < overridden.length; phase++) {
+				Method callback = ReflectionUtils.findMethod(listenerClass, PHASES.get(phase), TestContext.class);
+				overridden[phase] = callback == null || (callback.getDeclaringClass() != TestExecutionListener.class
+						&& callback.getDeclaringClass() != AbstractTestExecutionListener.class);
 			}
+			return overridden;
+		}
+	};
 
-			timers = registry.get("prepareTestInstance").timers();
-			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {
-				logTimer("prepareTestInstance", timer);
+	static final LifecycleObserver[] observers = createObservers();
+
+	private final TimingRecorder recorder;
+
+	/**
+	 * The listeners of every phase, rebuilt when listeners are registered, added to or removed from
+	 * {@link #getTestExecutionListeners()}. Replaced as a whole, so that threads running test methods in parallel never
+	 * see the listeners of one list with the count of another.
+	 */
+	private PhaseListeners phaseListeners = PhaseListeners.NONE;
+
+	/**
+	 * Per phase, the {@code listener.no-op} counters of the listeners that do nothing for this test class, empty unless
+	 * {@link #NO_OP_LISTENERS_PROPERTY} is set.
+	 */
+	private final Counter[][] noOpCallbacks;
+
+	private final ThreadLocal<long[]> testExecutionStart = ThreadLocal.withInitial(() -> new long[1]);
+
+	private long testClassStart;
+
+	/**
+	 * How long, in nanoseconds, the instrumentation adds to every sample. A listener that does nothing is still reported
+	 * as taking this long, so it is subtracted for the corrected numbers and anything that does not rise above it is
+	 * flagged as noise.
+	 */
+	static final long measurementFloorNanos;
+
+	static {
+		CachingTransactionalTestExecutionListener.bindCacheMetrics(registry);
+		int calibrationIterations = Integer.getInteger(CALIBRATION_ITERATIONS_PROPERTY, 0);
+		measurementFloorNanos = calibrate(calibrationIterations);
+		if (eventLog != null) {
+			eventLog.measurementFloor(measurementFloorNanos);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			contextCloser.close();
+			ringBufferRecorder.close();
+			contextPrewarmer.close();
+			if (eventLog != null) {
+				eventLog.close();
 			}
-			timers = registry.get("beforeTestMethod").timers();
-			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {				
-				logTimer("beforeTestMethod", timer);
+			for (LifecycleObserver observer : observers) {
+				observer.close();
 			}
-			timers = registry.get("beforeTestExecution").timers();
 			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {
-				logTimer("beforeTestExecution", timer);
+			if (calibrationIterations > 0) {
+				System.out.println(String.format(
+						"Measurement floor: %1$dns per callback (calibrated over %2$d no-op callbacks)",
+						measurementFloorNanos, calibrationIterations));
+			} else {
+				System.out.println("Measurement floor: not calibrated, see " + CALIBRATION_ITERATIONS_PROPERTY);
 			}
-			timers = registry.get("afterTestExecution").timers();
-			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {
-				logTimer("afterTestExecution", timer);
+			TimingReport report = new TimingReport(registry, measurementFloorNanos);
+			report.print();
+			List<TimingRecord> listenerBaseline = readListenerBaseline();
+			report.printListenerChanges(CachingTransactionalTestExecutionListener.PostProcessor.getChanges(),
+					listenerBaseline);
+			if (noOpListenerMode != NoOpListenerDetection.Mode.OFF) {
+				report.printNoOpListeners(noOpListenerMode == NoOpListenerDetection.Mode.SKIP, listenerBaseline);
+			}
+
+			String reportFile = System.getProperty(REPORT_FILE_PROPERTY);
+			if (reportFile != null) {
+				report.write(Paths.get(reportFile));
 			}
-			timers = registry.get("afterTestMethod").timers();
-			System.out.println("------------------------------------------------------------------------------------------------");
-			for(Timer timer : timers) {
-				logTimer("afterTestMethod", timer);
-			}			
 		}));
 	}
-	
-	private static void logTimer(String name, Timer timer) {
-
-//		if (!includeListeners.contains(timer.getId().getTag("listener"))) {
-//			return;
-//		}
-		
-		Double totalTime = timer.totalTime(TimeUnit.MILLISECONDS);
-		System.out.print(String.format("%1$-20s ", name));
-		System.out.print(String.format("%1$55s - ", timer.getId().getTag("listener")));
-		System.out.print(String.format("Total Time: %1$15fms, ", totalTime));
-		System.out.print(String.format("Count: %1$-8d, ", timer.count()));
-		System.out.print(String.format("Mean: %1$20fms, ", totalTime / timer.count()));
-		System.out.print(String.format("Max: %1$12fms, ", timer.max(TimeUnit.MILLISECONDS)));
-		ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
-		System.out.print("Percentiles: ");
-		for (ValueAtPercentile valueAtPercentile : percentiles) {
-			System.out.print(String.format("(%1$10fms at %2$2d" , valueAtPercentile.value(TimeUnit.MILLISECONDS), (int)(valueAtPercentile.percentile() * 100)) + "%)");
-		}
-		System.out.println("");
+
+	private static TimingRecorder createRecorder(Recording recording, MeterRegistry registry) {
+		if (recording == Recording.MICROMETER) {
+			return new MeterRecorder(registry);
+		}
+		return new RingBufferRecorder(new MeterRecorder(registry),
+				Integer.getInteger(RING_BUFFER_CAPACITY_PROPERTY, 16384));
+	}
+
+	@Nullable
+	private static List<TimingRecord> readListenerBaseline() {
+		String baseline = System.getProperty(LISTENER_BASELINE_PROPERTY);
+		if (baseline == null) {
+			return null;
+		}
+		try {
+			return TimingRecord.read(Paths.get(baseline));
+		} catch (UncheckedIOException e) {
+			System.err.println("Unable to read the listener baseline " + baseline + ": " + e.getCause());
+			return null;
+		}
+	}
+
+	@Nullable
+	private static MappedEventLog createEventLog() {
+		String file = System.getProperty(EVENT_LOG_FILE_PROPERTY);
+		if (file == null) {
+			return null;
+		}
+		try {
+			return MappedEventLog.create(
+					Paths.get(file.replace(PID_PLACEHOLDER, Long.toString(ProcessHandle.current().pid()))),
+					DataSize.parse(System.getProperty(EVENT_LOG_SIZE_PROPERTY, "64MB")).toBytes());
+		} catch (IOException e) {
+			System.err.println("Unable to create the event log, the samples are only kept in memory: " + e);
+			return null;
+		}
+	}
+
+	private static TimingRecorder logged(TimingRecorder recorder) {
+		return eventLog == null ? recorder : eventLog.andThen(recorder);
+	}
+
+	private static TimingRecorder recorder(Recording recording) {
+		return recording == Recording.MICROMETER ? meterRecorder : ringBufferRecorder;
 	}
+
+	private static LifecycleObserver[] createObservers() {
+		List<LifecycleObserver> observers = new ArrayList<>();
+		if ("true".equals(System.getProperty(GC_ATTRIBUTION_PROPERTY))) {
+			observers.add(GcPauseAttribution.subscribe(registry));
+		}
+		if ("true".equals(System.getProperty(JFR_EVENTS_PROPERTY))) {
+			observers.add(new FlightRecorderEvents());
+		}
+		String samplerInterval = System.getProperty(SAMPLER_INTERVAL_PROPERTY);
+		if (samplerInterval != null) {
+			observers.add(StackSampler.start(DurationStyle.detectAndParse(samplerInterval),
+					Paths.get(System.getProperty(SAMPLER_OUTPUT_PROPERTY, "target/profiling/stacks"))));
+		}
+		if ("true".equals(System.getProperty(TRACE_ENABLED_PROPERTY))) {
+			try {
+				observers.add(ChromeTraceExporter.create(
+						Paths.get(System.getProperty(TRACE_OUTPUT_PROPERTY, "target/profiling/traces")),
+						System.getProperty(TRACE_PROCESS_NAME_PROPERTY, "pid-" + ProcessHandle.current().pid())));
+			} catch (IOException e) {
+				System.err.println("Unable to create the trace file, tracing is off: " + e);
+			}
+		}
+		return observers.toArray(NO_OBSERVERS);
+	}
+
 	public TimingTestContextManager(Class<?> testClass) {
-		super(testClass);
+		this(testClass, defaultRecording);
+	}
+
+	public TimingTestContextManager(Class<?> testClass, Recording recording) {
+		super(bootstrap(testClass, recording));
+		this.recorder = recorder(recording);
+		this.noOpCallbacks = detectNoOpListeners();
 	}
 
 	public TimingTestContextManager(TestContextBootstrapper testContextBootstrapper) {
 		super(testContextBootstrapper);
+		this.recorder = recorder(defaultRecording);
+		this.noOpCallbacks = detectNoOpListeners();
+	}
+
+	/**
+	 * Find the listeners that do nothing for the test class and, in {@code skip} mode, remove them, so that this
+	 * manager only ever calls the listeners that the test class needs.
+	 * @return per phase, the counters of the callbacks the listeners got or would have got
+	 */
+	private Counter[][] detectNoOpListeners() {
+		Counter[][] counters = new Counter[PHASES.size()][0];
+		if (noOpListenerMode == NoOpListenerDetection.Mode.OFF) {
+			return counters;
+		}
+		List<TestExecutionListener> noOpListeners = NoOpListenerDetection
+				.findNoOpListeners(getTestContext().getTestClass(), getTestExecutionListeners());
+		registry.counter("listener.no-op.analyzed-test-classes").increment();
+		if (noOpListenerMode == NoOpListenerDetection.Mode.SKIP) {
+			getTestExecutionListeners().removeAll(noOpListeners);
+		}
+		for (TestExecutionListener listener : noOpListeners) {
+			registry.counter("listener.no-op.test-classes", "listener", listener.getClass().getSimpleName()).increment();
+		}
+		for (int phase = 0; phase < counters.length; phase++) {
+			String phaseName = PHASES.get(phase);
+			counters[phase] = listenersOverriding(noOpListeners, phase).stream()
+					.map(listener -> Counter.builder("listener.no-op").tag("phase", phaseName)
+							.tag("listener", listener.getClass().getSimpleName()).register(registry))
+					.toArray(Counter[]::new);
+		}
+		return counters;
+	}
+
+	private void countNoOpCallbacks(int phase) {
+		for (Counter counter : noOpCallbacks[phase]) {
+			counter.increment();
+		}
+	}
+
+	/**
+	 * @return the listeners that override the phase's callback, in the order they are called in
+	 */
+	private TestExecutionListener[] phaseListeners(int phase) {
+		List<TestExecutionListener> listeners = getTestExecutionListeners();
+		PhaseListeners phaseListeners = this.phaseListeners;
+		if (phaseListeners.listenerCount != listeners.size()) {
+			phaseListeners = this.phaseListeners = new PhaseListeners(listeners);
+		}
+		return phaseListeners.byPhase[phase];
 	}
 
+	private static List<TestExecutionListener> listenersOverriding(List<TestExecutionListener> listeners, int phase) {
+		return listeners.stream().filter(listener -> overriddenCallbacks.get(listener.getClass())[phase])
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Resolve the bootstrapper, the test context and the listeners of the test class through the
+	 * {@link BootstrapCache} and record how long that took in the {@value #BOOTSTRAP} phase. The
+	 * {@code TestContextManager} only picks up the result.
+	 */
+	private static TestContextBootstrapper bootstrap(Class<?> testClass, Recording recording) {
+		StartupTimeline.reached(StartupTimeline.Milestone.BOOTSTRAP_STARTED);
+		long start = System.nanoTime();
+		long cpuTimeBefore = currentThreadCpuTime();
+		long allocatedBytesBefore = currentThreadAllocatedBytes();
+		BootstrapCache.ResolvedBootstrapper bootstrapper = bootstrapCache.bootstrap(testClass,
+				new TimingContextLoaderDelegate(observers, contextPrewarmer, contextCloser),
+				TimingTestContextManager::createTestContextBootstrapper);
+		long allocatedBytes = currentThreadAllocatedBytes() - allocatedBytesBefore;
+		long cpuTime = currentThreadCpuTime() - cpuTimeBefore;
+		long end = System.nanoTime();
+		recorder(recording).record(BOOTSTRAP,
+				bootstrapper.getBootstrapperType().getSimpleName() + (bootstrapper.isCached() ? " (cached)" : ""),
+				start, end - start, cpuTimeSupported ? cpuTime : -1, allocatedBytesSupported ? allocatedBytes : -1);
+		contextPrewarmer.bootstrapped(testClass, bootstrapper::buildMergedContextConfiguration);
+		return bootstrapper;
+	}
+
+	/**
+	 * Resolve the {@link TestContextBootstrapper} through Spring's {@code BootstrapUtils}, but with a
+	 * {@link TimingContextLoaderDelegate} in the bootstrap context so that the observers are told about application
+	 * context loads. {@code BootstrapUtils} is package-private, so it is called by reflection.
+	 */
+	static TestContextBootstrapper createTestContextBootstrapper(Class<?> testClass,
+			BootstrapContext bootstrapContext) {
+		if (resolveTestContextBootstrapperMethod == null) {
+			throw new IllegalStateException(
+					"BootstrapUtils.resolveTestContextBootstrapper(BootstrapContext) not found, unable to bootstrap "
+							+ testClass.getName());
+		}
+		return (TestContextBootstrapper) ReflectionUtils.invokeMethod(resolveTestContextBootstrapperMethod, null,
+				bootstrapContext);
+	}
+
+	@Nullable
+	private static Method findResolveTestContextBootstrapper() {
+		try {
+			Method method = ReflectionUtils.findMethod(
+					ClassUtils.forName("org.springframework.test.context.BootstrapUtils",
+							TestContextManager.class.getClassLoader()),
+					"resolveTestContextBootstrapper", BootstrapContext.class);
+			if (method != null) {
+				ReflectionUtils.makeAccessible(method);
+			}
+			return method;
+		} catch (ClassNotFoundException | LinkageError ex) {
+			return null;
+		}
+	}
 
 	@Override
 	public void beforeTestClass() throws Exception {
@@ -100,38 +596,160 @@ public class TimingTestContextManager extends TestContextManager {
 			logger.trace("beforeTestClass(): class [" + testClass.getName() + "]");
 		}
 		getTestContext().updateState(null, null, null);
+		for (LifecycleObserver observer : observers) {
+			observer.testClassStarted(getTestContext());
+		}
+		contextPrewarmer.testClassStarted(testClass);
+		testClassStart = System.nanoTime();
+		countNoOpCallbacks(BEFORE_TEST_CLASS);
 
-		for (TestExecutionListener testExecutionListener : getTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		for (TestExecutionListener testExecutionListener : phaseListeners(BEFORE_TEST_CLASS)) {
 			try {
-				testExecutionListener.beforeTestClass(getTestContext());
+				timed(recorder, observers, "beforeTestClass", testExecutionListener, getTestContext(),
+						TestExecutionListener::beforeTestClass);
 			}
 			catch (Throwable ex) {
 				logException(ex, "beforeTestClass", testExecutionListener, testClass);
 				ReflectionUtils.rethrowException(ex);
-			} finally {
-				sample.stop(getTimer("beforeTestClass", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
 	}
 	
-	private Timer getTimer(String name, String listener) {
-		return Timer.builder(name)
-				.tag("listener",  listener)
-				.publishPercentiles(.50,.75, .90)
-				.register(registry);
+	/**
+	 * Invoke a callback on a listener and record how long it took, the CPU time it used and the bytes it allocated on
+	 * the calling thread. This is the only place where samples are taken, so that {@link #calibrate(int)} measures
+	 * exactly the code path the listeners are measured with.
+	 *
+	 * <p>The CPU time and allocation counters are read inside the wall-clock interval, so that the allocation window does
+	 * not include anything the recorder allocates. The observers are notified outside of it.
+	 */
+	static void timed(TimingRecorder recorder, LifecycleObserver[] observers, String phase,
+			TestExecutionListener testExecutionListener, TestContext testContext, ListenerCallback callback)
+			throws Exception {
+		String listener = testExecutionListener.getClass().getSimpleName();
+		for (LifecycleObserver observer : observers) {
+			observer.spanStarted(phase, listener, testContext);
+		}
+		long start = System.nanoTime();
+		long cpuTimeBefore = currentThreadCpuTime();
+		long allocatedBytesBefore = currentThreadAllocatedBytes();
+		try {
+			callback.invoke(testExecutionListener, testContext);
+		} finally {
+			long allocatedBytes = currentThreadAllocatedBytes() - allocatedBytesBefore;
+			long cpuTime = currentThreadCpuTime() - cpuTimeBefore;
+			long end = System.nanoTime();
+			recorder.record(phase, listener, start, end - start, cpuTimeSupported ? cpuTime : -1,
+					allocatedBytesSupported ? allocatedBytes : -1);
+			for (LifecycleObserver observer : observers) {
+				observer.spanEnded(phase, listener, testContext, start, end);
+			}
+		}
 	}
+
+	/**
+	 * Start a span that does not fit in a single call, such as a step of an application context load, on the current
+	 * thread.
+	 * @return the start of the span, to pass to {@link #recordSpan}
+	 */
+	static long[] startSpan() {
+		long start = System.nanoTime();
+		return new long[] { start, currentThreadCpuTime(), currentThreadAllocatedBytes() };
+	}
+
+	/**
+	 * End a span started with {@link #startSpan()} on the same thread and record it with the default recorder.
+	 * @return the {@link System#nanoTime()} the span ended at
+	 */
+	static long recordSpan(String phase, String listener, long[] start) {
+		long allocatedBytes = currentThreadAllocatedBytes() - start[2];
+		long cpuTime = currentThreadCpuTime() - start[1];
+		long end = System.nanoTime();
+		recorder(defaultRecording).record(phase, listener, start[0], end - start[0], cpuTimeSupported ? cpuTime : -1,
+				allocatedBytesSupported ? allocatedBytes : -1);
+		return end;
+	}
+
+	private static boolean enableCpuTime() {
+		if ("false".equals(System.getProperty(THREAD_COUNTERS_PROPERTY))
+				|| !threadMXBean.isCurrentThreadCpuTimeSupported()) {
+			return false;
+		}
+		if (!threadMXBean.isThreadCpuTimeEnabled()) {
+			threadMXBean.setThreadCpuTimeEnabled(true);
+		}
+		return true;
+	}
+
+	private static boolean enableAllocatedBytes() {
+		if ("false".equals(System.getProperty(THREAD_COUNTERS_PROPERTY))
+				|| !(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+			return false;
+		}
+		com.sun.management.ThreadMXBean hotSpotThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		if (!hotSpotThreadMXBean.isThreadAllocatedMemorySupported()) {
+			return false;
+		}
+		if (!hotSpotThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+			hotSpotThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		return true;
+	}
+
+	private static long currentThreadCpuTime() {
+		return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long currentThreadAllocatedBytes() {
+		return allocatedBytesSupported
+				? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId())
+				: 0;
+	}
+
+	/**
+	 * Time a no-op listener through {@link #timed} to find out how much of every sample is the instrumentation itself.
+	 * The same number of callbacks is timed beforehand only to warm up the code path, the median of the measured ones is
+	 * the floor.
+	 *
+	 * @param iterations the number of callbacks to measure
+	 * @return the measurement floor in nanoseconds, {@code 0} if calibration is turned off
+	 */
+	private static long calibrate(int iterations) {
+		if (iterations <= 0) {
+			return 0;
+		}
+		SimpleMeterRegistry calibrationRegistry = new SimpleMeterRegistry();
+		TestExecutionListener noOpListener = new NoOpTestExecutionListener();
+		// The warm-up gets a recorder and registry of its own, the recorder may hold on to its meters.
+		for (MeterRegistry registry : Arrays.asList(new SimpleMeterRegistry(), calibrationRegistry)) {
+			TimingRecorder calibrationRecorder = createRecorder(defaultRecording, registry);
+			try {
+				for (int i = 0; i < iterations; i++) {
+					timed(calibrationRecorder, NO_OBSERVERS, "calibration", noOpListener, null,
+							TestExecutionListener::beforeTestMethod);
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException("The no-op listener cannot fail", e);
+			} finally {
+				calibrationRecorder.close();
+			}
+		}
+		ValueAtPercentile median = calibrationRegistry.get("calibration").timer().takeSnapshot().percentileValues()[0];
+		return (long) median.value(TimeUnit.NANOSECONDS);
+	}
+
 	@Override
 	public void prepareTestInstance(Object testInstance) throws Exception {
 		if (logger.isTraceEnabled()) {
 			logger.trace("prepareTestInstance(): instance [" + testInstance + "]");
 		}
 		getTestContext().updateState(testInstance, null, null);
+		countNoOpCallbacks(PREPARE_TEST_INSTANCE);
 
-		for (TestExecutionListener testExecutionListener : getTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		for (TestExecutionListener testExecutionListener : phaseListeners(PREPARE_TEST_INSTANCE)) {
 			try {
-				testExecutionListener.prepareTestInstance(getTestContext());
+				timed(recorder, observers, "prepareTestInstance", testExecutionListener, getTestContext(),
+						TestExecutionListener::prepareTestInstance);
 			}
 			catch (Throwable ex) {
 				if (logger.isErrorEnabled()) {
@@ -139,8 +757,6 @@ public class TimingTestContextManager extends TestContextManager {
 							"] to prepare test instance [" + testInstance + "]", ex);
 				}
 				ReflectionUtils.rethrowException(ex);
-			} finally {
-				sample.stop(getTimer("prepareTestInstance", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
 	}
@@ -149,16 +765,15 @@ public class TimingTestContextManager extends TestContextManager {
 	public void beforeTestMethod(Object testInstance, Method testMethod) throws Exception {
 		String callbackName = "beforeTestMethod";
 		prepareForBeforeCallback(callbackName, testInstance, testMethod);
+		countNoOpCallbacks(BEFORE_TEST_METHOD);
 
-		for (TestExecutionListener testExecutionListener : getTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		for (TestExecutionListener testExecutionListener : phaseListeners(BEFORE_TEST_METHOD)) {
 			try {
-				testExecutionListener.beforeTestMethod(getTestContext());
+				timed(recorder, observers, "beforeTestMethod", testExecutionListener, getTestContext(),
+						TestExecutionListener::beforeTestMethod);
 			}
 			catch (Throwable ex) {
 				handleBeforeException(ex, callbackName, testExecutionListener, testInstance, testMethod);
-			} finally {						
-				sample.stop(getTimer("beforeTestMethod", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
 	}
@@ -167,34 +782,36 @@ public class TimingTestContextManager extends TestContextManager {
 	public void beforeTestExecution(Object testInstance, Method testMethod) throws Exception {
 		String callbackName = "beforeTestExecution";
 		prepareForBeforeCallback(callbackName, testInstance, testMethod);
+		countNoOpCallbacks(BEFORE_TEST_EXECUTION);
 
-		for (TestExecutionListener testExecutionListener : getTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		for (TestExecutionListener testExecutionListener : phaseListeners(BEFORE_TEST_EXECUTION)) {
 			try {
-				testExecutionListener.beforeTestExecution(getTestContext());
+				timed(recorder, observers, "beforeTestExecution", testExecutionListener, getTestContext(),
+						TestExecutionListener::beforeTestExecution);
 			}
 			catch (Throwable ex) {
 				handleBeforeException(ex, callbackName, testExecutionListener, testInstance, testMethod);
-			} finally {
-				sample.stop(getTimer("beforeTestExecution", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
+
+		testExecutionStarted();
 	}
 
 	@Override
 	public void afterTestExecution(Object testInstance, Method testMethod, @Nullable Throwable exception)
 			throws Exception {
 
+		testExecutionEnded();
 		String callbackName = "afterTestExecution";
 		prepareForAfterCallback(callbackName, testInstance, testMethod, exception);
+		countNoOpCallbacks(AFTER_TEST_EXECUTION);
 		Throwable afterTestExecutionException = null;
 
-		// Traverse the TestExecutionListeners in reverse order to ensure proper
-		// "wrapper"-style execution of listeners.
-		for (TestExecutionListener testExecutionListener : getReversedTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		// The listeners of the after phases are already in reverse order.
+		for (TestExecutionListener testExecutionListener : phaseListeners(AFTER_TEST_EXECUTION)) {
 			try {
-				testExecutionListener.afterTestExecution(getTestContext());
+				timed(recorder, observers, "afterTestExecution", testExecutionListener, getTestContext(),
+						TestExecutionListener::afterTestExecution);
 			}
 			catch (Throwable ex) {
 				logException(ex, callbackName, testExecutionListener, testInstance, testMethod);
@@ -204,8 +821,6 @@ public class TimingTestContextManager extends TestContextManager {
 				else {
 					afterTestExecutionException.addSuppressed(ex);
 				}
-			} finally {
-				sample.stop(getTimer("afterTestExecution", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
 
@@ -220,14 +835,14 @@ public class TimingTestContextManager extends TestContextManager {
 
 		String callbackName = "afterTestMethod";
 		prepareForAfterCallback(callbackName, testInstance, testMethod, exception);
+		countNoOpCallbacks(AFTER_TEST_METHOD);
 		Throwable afterTestMethodException = null;
 
-		// Traverse the TestExecutionListeners in reverse order to ensure proper
-		// "wrapper"-style execution of listeners.
-		for (TestExecutionListener testExecutionListener : getReversedTestExecutionListeners()) {
-			Timer.Sample sample = Timer.start(registry);
+		// The listeners of the after phases are already in reverse order.
+		for (TestExecutionListener testExecutionListener : phaseListeners(AFTER_TEST_METHOD)) {
 			try {
-				testExecutionListener.afterTestMethod(getTestContext());
+				timed(recorder, observers, "afterTestMethod", testExecutionListener, getTestContext(),
+						TestExecutionListener::afterTestMethod);
 			}
 			catch (Throwable ex) {
 				logException(ex, callbackName, testExecutionListener, testInstance, testMethod);
@@ -237,8 +852,6 @@ public class TimingTestContextManager extends TestContextManager {
 				else {
 					afterTestMethodException.addSuppressed(ex);
 				}
-			} finally {
-				sample.stop(getTimer("afterTestMethod", testExecutionListener.getClass().getSimpleName()));
 			}
 		}
 
@@ -248,15 +861,64 @@ public class TimingTestContextManager extends TestContextManager {
 	}
 	
 	/**
-	 * Get a copy of the {@link TestExecutionListener TestExecutionListeners}
-	 * registered for this {@code TestContextManager} in reverse order.
+	 * The {@code afterTestClass} callbacks are not timed, the observers are told when the class as a whole has ended.
 	 */
-	private List<TestExecutionListener> getReversedTestExecutionListeners() {
-		List<TestExecutionListener> listenersReversed = new ArrayList<>(getTestExecutionListeners());
-		Collections.reverse(listenersReversed);
-		return listenersReversed;
+	@Override
+	public void afterTestClass() throws Exception {
+		try {
+			super.afterTestClass();
+		} finally {
+			long end = System.nanoTime();
+			for (LifecycleObserver observer : observers) {
+				observer.testClassEnded(getTestContext(), testClassStart, end);
+			}
+		}
 	}
-	
+
+	/**
+	 * The test context only knows the test method from {@code beforeTestMethod} on and fails when asked for it before.
+	 * @return the name of the current test method, {@code null} during the phases that run before it is known
+	 */
+	@Nullable
+	static String testMethodName(String phase, TestContext testContext) {
+		if ("beforeTestClass".equals(phase) || "prepareTestInstance".equals(phase)) {
+			return null;
+		}
+		return testContext.getTestMethod().getName();
+	}
+
+	/**
+	 * The test body runs in between {@code beforeTestExecution} and {@code afterTestExecution}, it is not timed but the
+	 * observers are told about it.
+	 */
+	private void testExecutionStarted() {
+		if (!firstTestStarted.get() && firstTestStarted.compareAndSet(false, true)) {
+			StartupTimeline.reached(StartupTimeline.Milestone.FIRST_TEST_STARTED);
+			recorder.record(STARTUP, FIRST_TEST, jvmStartNanos, System.nanoTime() - jvmStartNanos, -1, -1);
+		}
+		for (LifecycleObserver observer : observers) {
+			observer.spanStarted(LifecycleObserver.TEST_EXECUTION, LifecycleObserver.TEST_BODY, getTestContext());
+		}
+		testExecutionStart.get()[0] = System.nanoTime();
+	}
+
+	private void testExecutionEnded() {
+		long end = System.nanoTime();
+		long[] start = testExecutionStart.get();
+		if (start[0] == 0) {
+			return;
+		}
+		if (!firstTestEnded.get() && firstTestEnded.compareAndSet(false, true)) {
+			StartupTimeline.reached(StartupTimeline.Milestone.FIRST_TEST_ENDED);
+			StartupTimeline.record(recorder, jvmStartNanos);
+		}
+		for (LifecycleObserver observer : observers) {
+			observer.spanEnded(LifecycleObserver.TEST_EXECUTION, LifecycleObserver.TEST_BODY, getTestContext(),
+					start[0], end);
+		}
+		start[0] = 0;
+	}
+
 	private void prepareForBeforeCallback(String callbackName, Object testInstance, Method testMethod) {
 		if (logger.isTraceEnabled()) {
 			logger.trace(String.format("%s(): instance [%s], method [%s]", callbackName, testInstance, testMethod));
@@ -300,6 +962,49 @@ public class TimingTestContextManager extends TestContextManager {
 					callbackName, testExecutionListener, testMethod, testInstance), ex);
 		}
 	}
-	
-	
+
+	@FunctionalInterface
+	interface ListenerCallback {
+
+		void invoke(TestExecutionListener testExecutionListener, TestContext testContext) throws Exception;
+	}
+
+	private static class NoOpTestExecutionListener implements TestExecutionListener {
+
+		@Override
+		public void beforeTestMethod(TestContext testContext) {
+		}
+	}
+
+	/**
+	 * Per phase, in the order of {@link #PHASES}, the listeners that override the phase's callback, in the order they
+	 * are called in: the after phases in reverse. Listeners that inherit the empty callback are neither called nor
+	 * timed.
+	 *
+	 * <p>Only the number of listeners is compared on every phase, so that {@code getTestExecutionListeners().add(...)}
+	 * and {@code remove(...)} are picked up before the next callback. Replacing a listener in place, with
+	 * {@code set(...)}, is not.
+	 */
+	private static final class PhaseListeners {
+
+		static final PhaseListeners NONE = new PhaseListeners(Collections.emptyList());
+
+		final int listenerCount;
+
+		final TestExecutionListener[][] byPhase = new TestExecutionListener[PHASES.size()][];
+
+		PhaseListeners(List<TestExecutionListener> listeners) {
+			this.listenerCount = listeners.size();
+			for (int phase = 0; phase < byPhase.length; phase++) {
+				List<TestExecutionListener> overriding = listenersOverriding(listeners, phase);
+				if (phase >= AFTER_TEST_EXECUTION) {
+					// Traverse the TestExecutionListeners in reverse order to ensure proper "wrapper"-style execution of
+					// listeners.
+					Collections.reverse(overriding);
+				}
+				byPhase[phase] = overriding.toArray(NO_LISTENERS);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,142 @@
+package org.test.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+import io.micrometer.core.instrument.Timer;
+
+class TimingTestContextManagerTests {
+
+	private static final List<String> calls = new ArrayList<>();
+
+	private final TimingTestContextManager manager = new TimingTestContextManager(Listened.class);
+
+	@Test
+	void onlyListenersThatOverrideACallbackAreCalledAndTimed() throws Exception {
+		runTestMethod();
+		assertThat(calls).containsExactly("Outer.beforeTestMethod", "Inner.beforeTestMethod",
+				"Inner.afterTestMethod", "Outer.afterTestMethod");
+		assertThat(timer("beforeTestMethod", Outer.class)).isNotNull();
+		assertThat(timer("beforeTestMethod", Inheriting.class)).isNull();
+		assertThat(timer("afterTestMethod", Inheriting.class)).isNull();
+		assertThat(timer("prepareTestInstance", Outer.class)).isNull();
+	}
+
+	@Test
+	void afterPhasesCallTheListenersInReverse() throws Exception {
+		Listened testInstance = new Listened();
+		Method testMethod = Listened.class.getDeclaredMethod("test");
+		calls.clear();
+		manager.beforeTestExecution(testInstance, testMethod);
+		manager.afterTestExecution(testInstance, testMethod, null);
+		assertThat(calls).containsExactly("Outer.beforeTestExecution", "Inner.beforeTestExecution",
+				"Inner.afterTestExecution", "Outer.afterTestExecution");
+	}
+
+	@Test
+	void listenersAddedToOrRemovedFromTheListAreFollowed() throws Exception {
+		TestExecutionListener late = new Late();
+		manager.getTestExecutionListeners().add(late);
+		runTestMethod();
+		assertThat(calls).containsExactly("Outer.beforeTestMethod", "Inner.beforeTestMethod",
+				"Late.beforeTestMethod", "Inner.afterTestMethod", "Outer.afterTestMethod");
+
+		manager.getTestExecutionListeners().remove(late);
+		runTestMethod();
+		assertThat(calls).doesNotContain("Late.beforeTestMethod");
+	}
+
+	private void runTestMethod() throws Exception {
+		Listened testInstance = new Listened();
+		Method testMethod = Listened.class.getDeclaredMethod("test");
+		calls.clear();
+		manager.beforeTestMethod(testInstance, testMethod);
+		manager.afterTestMethod(testInstance, testMethod, null);
+	}
+
+	private static Timer timer(String phase, Class<?> listener) {
+		return TimingTestContextManager.registry.find(phase).tag("listener", listener.getSimpleName()).timer();
+	}
+
+	@TestExecutionListeners({ Outer.class, Inheriting.class, Inner.class })
+	static class Listened {
+
+		void test() {
+		}
+	}
+
+	static class Outer implements TestExecutionListener {
+
+		@Override
+		public void beforeTestMethod(TestContext testContext) {
+			calls.add("Outer.beforeTestMethod");
+		}
+
+		@Override
+		public void beforeTestExecution(TestContext testContext) {
+			calls.add("Outer.beforeTestExecution");
+		}
+
+		@Override
+		public void afterTestExecution(TestContext testContext) {
+			calls.add("Outer.afterTestExecution");
+		}
+
+		@Override
+		public void afterTestMethod(TestContext testContext) {
+			calls.add("Outer.afterTestMethod");
+		}
+	}
+
+	/**
+	 * Inherits every callback but {@code beforeTestClass}, which the tests never run.
+	 */
+	static class Inheriting extends AbstractTestExecutionListener {
+
+		@Override
+		public void beforeTestClass(TestContext testContext) {
+			calls.add("Inheriting.beforeTestClass");
+		}
+	}
+
+	static class Inner extends AbstractTestExecutionListener {
+
+		@Override
+		public void beforeTestMethod(TestContext testContext) {
+			calls.add("Inner.beforeTestMethod");
+		}
+
+		@Override
+		public void beforeTestExecution(TestContext testContext) {
+			calls.add("Inner.beforeTestExecution");
+		}
+
+		@Override
+		public void afterTestExecution(TestContext testContext) {
+			calls.add("Inner.afterTestExecution");
+		}
+
+		@Override
+		public void afterTestMethod(TestContext testContext) {
+			calls.add("Inner.afterTestMethod");
+		}
+	}
+
+	static class Late implements TestExecutionListener {
+
+		@Override
+		public void beforeTestMethod(TestContext testContext) {
+			calls.add("Late.beforeTestMethod");
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package org.test.profiling.jdbc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+import org.test.profiling.suite.ExampleSuite;
+import org.test.profiling.suite.ForkedSuiteRunner;
+import org.test.profiling.suite.TimingRecord;
+
+/**
+ * Runs the {@code transactional} example suite against every combination of database engine, connection pool and
+ * isolation level and prints a matrix of the per-test begin ({@code beforeTestMethod}) and rollback
+ * ({@code afterTestMethod}) cost of the transactional listener. The {@code nontransactional} suite is run as the
+ * baseline once for every engine and pool, the listener does not touch the database there. Each row's overhead is its
+ * begin and rollback less the baseline of its own engine and pool, as the pool and driver classes loaded and the
+ * connections held change the cost even where no transaction is begun.
+ *
+ * <p>If the cost barely moves across engines and pools, it is inherent to Spring's listener; if it follows the engine
+ * or pool, it is the driver.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ * <li>{@code profiling.matrix.engines} - defaults to {@code h2,hsqldb,derby}. {@code sqlserver-standin} (H2 in SQL
+ * Server mode) and {@code sqlserver} (the database configured in {@code application.yml}) are also available.</li>
+ * <li>{@code profiling.matrix.pools} - defaults to {@code hikari,tomcat,dbcp2}.</li>
+ * <li>{@code profiling.matrix.isolation-levels} - defaults to {@code read-committed,serializable}, {@code default}
+ * leaves the driver's default in place.</li>
+ * <li>{@code profiling.matrix.output} - where the per-run logs and reports go, defaults to
+ * {@code target/profiling/engine-matrix}.</li>
+ * </ul>
+ *
+ * Run it with {@code mvn -Pengine-matrix verify}.
+ */
+public class EngineMatrix {
+
+	enum Engine {
+
+		H2("jdbc:h2:mem:profiling;DB_CLOSE_DELAY=-1"),
+
+		HSQLDB("jdbc:hsqldb:mem:profiling"),
+
+		DERBY("jdbc:derby:memory:profiling;create=true"),
+
+		SQLSERVER_STANDIN("jdbc:h2:mem:profiling;MODE=MSSQLServer;DB_CLOSE_DELAY=-1"),
+
+		SQLSERVER(null);
+
+		private final String url;
+
+		Engine(String url) {
+			this.url = url;
+		}
+
+		void configure(Map<String, String> properties, Path outputDirectory, String label) {
+			if (url != null) {
+				properties.put("spring.datasource.url", url);
+				properties.put("spring.datasource.username", "sa");
+				properties.put("spring.datasource.password", "");
+			}
+			if (this == DERBY) {
+				// Derby writes its log to derby.log in the working directory otherwise.
+				properties.put("derby.stream.error.file",
+						outputDirectory.resolve(label + ".derby.log").toAbsolutePath().toString());
+			}
+		}
+	}
+
+	enum Pool {
+
+		HIKARI("com.zaxxer.hikari.HikariDataSource", "spring.datasource.hikari.transaction-isolation"),
+
+		TOMCAT("org.apache.tomcat.jdbc.pool.DataSource", "spring.datasource.tomcat.default-transaction-isolation"),
+
+		DBCP2("org.apache.commons.dbcp2.BasicDataSource", "spring.datasource.dbcp2.default-transaction-isolation");
+
+		private final String type;
+		private final String isolationProperty;
+
+		Pool(String type, String isolationProperty) {
+			this.type = type;
+			this.isolationProperty = isolationProperty;
+		}
+
+		void configure(Map<String, String> properties, Isolation isolation) {
+			properties.put("spring.datasource.type", type);
+			if (isolation.level != null) {
+				// Hikari takes the name of the java.sql.Connection constant, the others take its value.
+				properties.put(isolationProperty, this == HIKARI ? isolation.constantName : isolation.level.toString());
+			}
+		}
+	}
+
+	enum Isolation {
+
+		DEFAULT(null, null),
+
+		READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED, "TRANSACTION_READ_UNCOMMITTED"),
+
+		READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED, "TRANSACTION_READ_COMMITTED"),
+
+		REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ, "TRANSACTION_REPEATABLE_READ"),
+
+		SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE, "TRANSACTION_SERIALIZABLE");
+
+		private final Integer level;
+		private final String constantName;
+
+		Isolation(Integer level, String constantName) {
+			this.level = level;
+			this.constantName = constantName;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Engine> engines = parse(Engine.class, System.getProperty("profiling.matrix.engines", "h2,hsqldb,derby"));
+		List<Pool> pools = parse(Pool.class, System.getProperty("profiling.matrix.pools", "hikari,tomcat,dbcp2"));
+		List<Isolation> isolationLevels = parse(Isolation.class,
+				System.getProperty("profiling.matrix.isolation-levels", "read-committed,serializable"));
+		Path output = Paths.get(System.getProperty("profiling.matrix.output", "target/profiling/engine-matrix"));
+
+		ForkedSuiteRunner runner = new ForkedSuiteRunner(output);
+
+		List<String[]> rows = new ArrayList<>();
+		for (Engine engine : engines) {
+			for (Pool pool : pools) {
+				String baselineLabel = String.join("-", name(engine), name(pool), "baseline");
+				Map<String, String> baselineProperties = new LinkedHashMap<>();
+				engine.configure(baselineProperties, output, baselineLabel);
+				pool.configure(baselineProperties, Isolation.DEFAULT);
+				System.out.println("Running the NONTRANSACTIONAL baseline for " + baselineLabel);
+				List<TimingRecord> baseline = runner.run(ExampleSuite.NONTRANSACTIONAL, baselineLabel,
+						baselineProperties);
+				double baselineCost = TimingRecord.transactionalMean(baseline, "beforeTestMethod")
+						+ TimingRecord.transactionalMean(baseline, "afterTestMethod");
+				for (Isolation isolation : isolationLevels) {
+					String label = String.join("-", name(engine), name(pool), name(isolation));
+					Map<String, String> properties = new LinkedHashMap<>();
+					engine.configure(properties, output, label);
+					pool.configure(properties, isolation);
+					System.out.println("Running the TRANSACTIONAL suite for " + label);
+					List<TimingRecord> records = runner.run(ExampleSuite.TRANSACTIONAL, label, properties);
+					double begin = TimingRecord.transactionalMean(records, "beforeTestMethod");
+					double rollback = TimingRecord.transactionalMean(records, "afterTestMethod");
+					rows.add(new String[] { name(engine), name(pool), name(isolation), Double.toString(begin),
+							Double.toString(rollback), Double.toString(baselineCost),
+							Double.toString((begin + rollback) - baselineCost) });
+				}
+			}
+		}
+		report(rows);
+		writeMatrix(output.resolve("matrix.csv"), rows);
+	}
+
+	private static void report(List<String[]> rows) {
+		System.out.println("-----------------------------------------------------------------------------------------------------------------");
+		System.out.println("Transactional listener cost per test by engine, pool and isolation level (mean ms)");
+		System.out.println(String.format("%1$-18s %2$-8s %3$-18s %4$16s %5$16s %6$16s %7$16s", "engine", "pool",
+				"isolation", "begin", "rollback", "baseline", "overhead"));
+		for (String[] row : rows) {
+			System.out.println(String.format("%1$-18s %2$-8s %3$-18s %4$14fms %5$14fms %6$14fms %7$14fms", row[0],
+					row[1], row[2], Double.parseDouble(row[3]), Double.parseDouble(row[4]), Double.parseDouble(row[5]),
+					Double.parseDouble(row[6])));
+		}
+		System.out.println("-----------------------------------------------------------------------------------------------------------------");
+	}
+
+	private static void writeMatrix(Path file, List<String[]> rows) throws IOException {
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+			writer.println("engine,pool,isolation,begin,rollback,baseline,overhead");
+			for (String[] row : rows) {
+				writer.println(String.join(",", row));
+			}
+		}
+	}
+
+	private static <E extends Enum<E>> List<E> parse(Class<E> type, String values) {
+		List<E> parsed = new ArrayList<>();
+		for (String value : StringUtils.commaDelimitedListToStringArray(values)) {
+			parsed.add(Enum.valueOf(type, value.trim().toUpperCase().replace('-', '_')));
+		}
+		return parsed;
+	}
+
+	private static String name(Enum<?> value) {
+		return value.name().toLowerCase().replace('_', '-');
+	}
+
+	private EngineMatrix() {
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.test.profiling.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A {@link DataSource} wrapper that adds a delay to every JDBC call that would require a round trip to a remote
+ * database server. Embedded databases answer these calls in a few microseconds, which hides the cost that
+ * {@code TransactionalTestExecutionListener} pays against a real server on the network.
+ *
+ * <p>The calls that are considered round trips are the transaction demarcation calls on {@link Connection} (commit,
+ * rollback, auto-commit and isolation changes, savepoints, validation) and the execute methods of the statements
+ * created from it. Everything else is passed straight through to the target connection.
+ */
+public class LatencyInjectingDataSource extends DelegatingDataSource {
+
+	private static final Set<String> CONNECTION_ROUND_TRIPS = new HashSet<>(Arrays.asList(
+			"commit", "rollback", "setAutoCommit", "setTransactionIsolation", "setSavepoint", "releaseSavepoint",
+			"isValid"));
+
+	private static final Set<String> STATEMENT_ROUND_TRIPS = new HashSet<>(Arrays.asList(
+			"execute", "executeQuery", "executeUpdate", "executeBatch", "executeLargeUpdate", "executeLargeBatch"));
+
+	private final LatencyModel latencyModel;
+
+	public LatencyInjectingDataSource(DataSource targetDataSource, LatencyModel latencyModel) {
+		super(targetDataSource);
+		this.latencyModel = latencyModel;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return proxy(Connection.class, obtainTargetDataSource().getConnection(), CONNECTION_ROUND_TRIPS);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return proxy(Connection.class, obtainTargetDataSource().getConnection(username, password), CONNECTION_ROUND_TRIPS);
+	}
+
+	public LatencyModel getLatencyModel() {
+		return latencyModel;
+	}
+
+	private <T> T proxy(Class<T> type, T target, Set<String> roundTrips) {
+		return type.cast(Proxy.newProxyInstance(LatencyInjectingDataSource.class.getClassLoader(), new Class<?>[] {type},
+				new RoundTripInvocationHandler(target, roundTrips)));
+	}
+
+	/**
+	 * Park the calling thread for the next delay drawn from the latency model. {@link LockSupport#parkNanos(long)} may
+	 * return early, so keep parking until the deadline has passed.
+	 */
+	private void simulateRoundTrip() {
+		long delay = latencyModel.nextDelayNanos();
+		if (delay <= 0) {
+			return;
+		}
+		long deadline = System.nanoTime() + delay;
+		long remaining = delay;
+		while (remaining > 0) {
+			LockSupport.parkNanos(remaining);
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	private class RoundTripInvocationHandler implements InvocationHandler {
+
+		private final Object target;
+		private final Set<String> roundTrips;
+
+		RoundTripInvocationHandler(Object target, Set<String> roundTrips) {
+			this.target = target;
+			this.roundTrips = roundTrips;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Latency injecting proxy for [" + target + "]";
+				default:
+					break;
+			}
+			if (roundTrips.contains(method.getName())) {
+				simulateRoundTrip();
+			}
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+			if (result instanceof CallableStatement && method.getReturnType() == CallableStatement.class) {
+				return proxy(CallableStatement.class, (CallableStatement) result, STATEMENT_ROUND_TRIPS);
+			}
+			if (result instanceof PreparedStatement && method.getReturnType() == PreparedStatement.class) {
+				return proxy(PreparedStatement.class, (PreparedStatement) result, STATEMENT_ROUND_TRIPS);
+			}
+			if (result instanceof Statement && method.getReturnType() == Statement.class) {
+				return proxy(Statement.class, (Statement) result, STATEMENT_ROUND_TRIPS);
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.test.profiling.jdbc;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * Wraps every {@link DataSource} in the test context with a {@link LatencyInjectingDataSource} when
+ * {@code profiling.jdbc.latency.mode} is set. The supported properties are:
+ *
+ * <ul>
+ * <li>{@code profiling.jdbc.latency.mode} - {@code fixed}, {@code normal} or {@code recorded}.</li>
+ * <li>{@code profiling.jdbc.latency.mean} - the (mean) round-trip time for {@code fixed} and {@code normal}, for
+ * example {@code 2ms}.</li>
+ * <li>{@code profiling.jdbc.latency.standard-deviation} - the standard deviation for {@code normal}.</li>
+ * <li>{@code profiling.jdbc.latency.samples} - the location of the recorded samples for {@code recorded}, see
+ * {@link LatencyModel#recorded(Resource)}.</li>
+ * </ul>
+ *
+ * This is registered in {@code META-INF/spring.factories} on the test classpath.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "profiling.jdbc.latency", name = "mode")
+public class LatencyInjectionAutoConfiguration {
+
+	public enum Mode {
+		FIXED, NORMAL, RECORDED
+	}
+
+	@Bean
+	static BeanPostProcessor latencyInjectingDataSourcePostProcessor(Environment environment,
+			ResourceLoader resourceLoader) {
+		LatencyModel latencyModel = latencyModel(environment, resourceLoader);
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof DataSource && !(bean instanceof LatencyInjectingDataSource)) {
+					return new LatencyInjectingDataSource((DataSource) bean, latencyModel);
+				}
+				return bean;
+			}
+		};
+	}
+
+	static LatencyModel latencyModel(Environment environment, ResourceLoader resourceLoader) {
+		Binder binder = Binder.get(environment);
+		Mode mode = binder.bind("profiling.jdbc.latency.mode", Mode.class).get();
+		Duration mean = binder.bind("profiling.jdbc.latency.mean", Duration.class).orElse(Duration.ZERO);
+		switch (mode) {
+			case FIXED:
+				return LatencyModel.fixed(mean);
+			case NORMAL:
+				return LatencyModel.normal(mean,
+						binder.bind("profiling.jdbc.latency.standard-deviation", Duration.class).orElse(Duration.ZERO));
+			case RECORDED:
+				String samples = binder.bind("profiling.jdbc.latency.samples", String.class)
+						.orElseThrow(() -> new IllegalStateException(
+								"profiling.jdbc.latency.samples is required when the latency mode is 'recorded'"));
+				return LatencyModel.recorded(resourceLoader.getResource(samples));
+			default:
+				throw new IllegalStateException("Unsupported latency mode " + mode);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.test.profiling.jdbc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Produces the delay that {@link LatencyInjectingDataSource} adds to a single driver round trip.
+ *
+ * <p>Three shapes are supported: a {@link #fixed(Duration) fixed} delay, a truncated {@link #normal(Duration, Duration)
+ * normal} distribution and a {@link #recorded(Resource) recorded} distribution that replays samples captured against a
+ * real database server.
+ */
+@FunctionalInterface
+public interface LatencyModel {
+
+	/**
+	 * @return the delay, in nanoseconds, to apply to the next round trip. Never negative.
+	 */
+	long nextDelayNanos();
+
+	/**
+	 * A model that does not add any delay.
+	 */
+	static LatencyModel none() {
+		return () -> 0L;
+	}
+
+	/**
+	 * A model that adds the same delay to every round trip.
+	 * @param delay the delay per round trip
+	 */
+	static LatencyModel fixed(Duration delay) {
+		long nanos = delay.toNanos();
+		Assert.isTrue(nanos >= 0, "The delay must not be negative");
+		return () -> nanos;
+	}
+
+	/**
+	 * A model that draws each delay from a normal distribution, truncated at zero.
+	 * @param mean the mean delay per round trip
+	 * @param standardDeviation the standard deviation of the delay
+	 */
+	static LatencyModel normal(Duration mean, Duration standardDeviation) {
+		long meanNanos = mean.toNanos();
+		long standardDeviationNanos = standardDeviation.toNanos();
+		return () -> Math.max(0L,
+				meanNanos + (long) (ThreadLocalRandom.current().nextGaussian() * standardDeviationNanos));
+	}
+
+	/**
+	 * A model that replays round-trip times recorded against a real server, picking a sample at random for each round
+	 * trip.
+	 *
+	 * <p>The resource contains one sample per line, expressed as a decimal number of milliseconds (for example
+	 * {@code 0.734}). Blank lines and lines starting with {@code #} are ignored.
+	 *
+	 * @param samples the resource containing the recorded samples
+	 */
+	static LatencyModel recorded(Resource samples) {
+		List<Long> values = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(samples.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				values.add(Math.max(0L, (long) (Double.parseDouble(line) * 1_000_000)));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read recorded round-trip samples from " + samples, e);
+		}
+		Assert.notEmpty(values, () -> "No round-trip samples found in " + samples);
+		long[] nanos = values.stream().mapToLong(Long::longValue).toArray();
+		return () -> nanos[ThreadLocalRandom.current().nextInt(nanos.length)];
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.test.profiling.jdbc;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.StringUtils;
+import org.test.profiling.suite.ExampleSuite;
+import org.test.profiling.suite.ForkedSuiteRunner;
+import org.test.profiling.suite.TimingRecord;
+
+/**
+ * Reruns the example suites at several simulated round-trip times and reports how the per-test cost of the
+ * transactional listener grows with network latency.
+ *
+ * <p>Each suite runs in its own forked JVM per round-trip time, with the data source wrapped by a
+ * {@link LatencyInjectingDataSource}. The transactional overhead is the difference between the
+ * {@code beforeTestMethod} + {@code afterTestMethod} cost of the transactional listener in the {@code transactional}
+ * and {@code nontransactional} suites. The slope of that overhead against the round-trip time is the number of round
+ * trips each transactional test pays for.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ * <li>{@code profiling.sweep.round-trips} - comma separated round-trip times, defaults to
+ * {@code 0ms,1ms,2ms,5ms,10ms}.</li>
+ * <li>{@code profiling.sweep.mode} - {@code fixed} (the default) or {@code normal}.</li>
+ * <li>{@code profiling.sweep.standard-deviation} - the standard deviation used by the {@code normal} mode.</li>
+ * <li>{@code profiling.sweep.output} - where the per-run logs and reports go, defaults to
+ * {@code target/profiling/latency-sweep}.</li>
+ * </ul>
+ *
+ * Run it with {@code mvn -Platency-sweep verify}.
+ */
+public class LatencySweep {
+
+	public static void main(String[] args) throws Exception {
+		List<Duration> roundTrips = new ArrayList<>();
+		for (String value : StringUtils.commaDelimitedListToStringArray(
+				System.getProperty("profiling.sweep.round-trips", "0ms,1ms,2ms,5ms,10ms"))) {
+			roundTrips.add(DurationStyle.detectAndParse(value.trim()));
+		}
+		String mode = System.getProperty("profiling.sweep.mode", "fixed");
+		String standardDeviation = System.getProperty("profiling.sweep.standard-deviation", "0ms");
+		Path output = Paths.get(System.getProperty("profiling.sweep.output", "target/profiling/latency-sweep"));
+
+		ForkedSuiteRunner runner = new ForkedSuiteRunner(output);
+		Map<Duration, double[]> results = new LinkedHashMap<>();
+		for (Duration roundTrip : roundTrips) {
+			Map<String, String> properties = new LinkedHashMap<>();
+			properties.put("profiling.jdbc.latency.mode", mode);
+			properties.put("profiling.jdbc.latency.mean", roundTrip.toNanos() + "ns");
+			properties.put("profiling.jdbc.latency.standard-deviation", standardDeviation);
+
+			double[] row = new double[4];
+			for (ExampleSuite suite : ExampleSuite.values()) {
+				String label = suite.name().toLowerCase() + "-" + roundTrip.toNanos() + "ns";
+				System.out.println("Running the " + suite + " suite with a round-trip time of " + roundTrip.toNanos()
+						/ 1_000_000d + "ms");
+				List<TimingRecord> records = runner.run(suite, label, properties);
+				int offset = suite == ExampleSuite.TRANSACTIONAL ? 0 : 2;
+				row[offset] = TimingRecord.transactionalMean(records, "beforeTestMethod");
+				row[offset + 1] = TimingRecord.transactionalMean(records, "afterTestMethod");
+			}
+			results.put(roundTrip, row);
+		}
+		report(mode, results);
+	}
+
+	private static void report(String mode, Map<Duration, double[]> results) {
+		System.out.println("------------------------------------------------------------------------------------------------");
+		System.out.println("Transactional listener cost by round-trip time (" + mode + " latency, mean ms per test)");
+		System.out.println(String.format("%1$12s %2$18s %3$18s %4$18s %5$18s %6$18s", "round trip", "tx before",
+				"tx after", "non-tx before", "non-tx after", "tx overhead"));
+		List<double[]> points = new ArrayList<>();
+		results.forEach((roundTrip, row) -> {
+			double roundTripMillis = roundTrip.toNanos() / 1_000_000d;
+			double overhead = (row[0] + row[1]) - (row[2] + row[3]);
+			points.add(new double[] { roundTripMillis, overhead });
+			System.out.println(String.format("%1$10fms %2$16fms %3$16fms %4$16fms %5$16fms %6$16fms", roundTripMillis,
+					row[0], row[1], row[2], row[3], overhead));
+		});
+		if (points.size() > 1) {
+			double[] fit = leastSquares(points);
+			System.out.println(String.format("Overhead per test = %1$f round trips x round-trip time + %2$fms", fit[0],
+					fit[1]));
+		}
+		System.out.println("------------------------------------------------------------------------------------------------");
+	}
+
+	/**
+	 * @return the slope and intercept of the least squares line through the points
+	 */
+	private static double[] leastSquares(List<double[]> points) {
+		double n = points.size();
+		double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+		for (double[] point : points) {
+			sumX += point[0];
+			sumY += point[1];
+			sumXY += point[0] * point[1];
+			sumXX += point[0] * point[0];
+		}
+		double denominator = n * sumXX - sumX * sumX;
+		if (denominator == 0) {
+			return new double[] { Double.NaN, sumY / n };
+		}
+		double slope = (n * sumXY - sumX * sumY) / denominator;
+		return new double[] { slope, (sumY - slope * sumX) / n };
+	}
+
+	private LatencySweep() {
+	}
+
+}
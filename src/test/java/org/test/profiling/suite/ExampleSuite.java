@@ -0,0 +1,50 @@
+package org.test.profiling.suite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+/**
+ * The example integration test suites that the benchmark tools run, one per package.
+ */
+public enum ExampleSuite {
+
+	TRANSACTIONAL("org.test.profiling.transactional"),
+
+	NONTRANSACTIONAL("org.test.profiling.nontransactional");
+
+	private final String packageName;
+
+	ExampleSuite(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * @return the names of the {@code *IT} classes in the suite's package, in classpath order.
+	 */
+	public List<String> getClassNames() {
+		PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+		MetadataReaderFactory metadataReaderFactory = new CachingMetadataReaderFactory(resolver);
+		List<String> classNames = new ArrayList<>();
+		try {
+			for (Resource resource : resolver.getResources(
+					"classpath*:" + packageName.replace('.', '/') + "/*IT.class")) {
+				classNames.add(metadataReaderFactory.getMetadataReader(resource).getClassMetadata().getClassName());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return classNames;
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.test.profiling.suite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.runner.JUnitCore;
+import org.test.profiling.EventLogReader;
+import org.test.profiling.TimingTestContextManager;
+
+/**
+ * Runs an {@link ExampleSuite} in a fresh JVM, the way a Failsafe fork would, and collects the timings that
+ * {@link TimingTestContextManager} writes when the fork exits. A fresh JVM per run guarantees that nothing (cached
+ * application contexts, JIT state, connection pools) leaks from one configuration into the next.
+ *
+ * <p>Any {@code spring.*} and {@code profiling.*} system properties of the current JVM are passed on to the fork, so a
+ * benchmark can be pointed at a different database from the command line.
+ */
+public class ForkedSuiteRunner {
+
+	private final Path outputDirectory;
+
+	private final Map<String, String> systemProperties = new LinkedHashMap<>();
+
+	public ForkedSuiteRunner(Path outputDirectory) {
+		this.outputDirectory = outputDirectory;
+		System.getProperties().stringPropertyNames().stream()
+				.filter(name -> name.startsWith("spring.") || name.startsWith("profiling."))
+				.forEach(name -> systemProperties.put(name, System.getProperty(name)));
+	}
+
+	public ForkedSuiteRunner systemProperty(String name, String value) {
+		systemProperties.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Run the suite and return its timings. The fork's output goes to {@code <label>.log}, the timings to
+	 * {@code <label>.csv} and the event log that survives a crashed fork to {@code <label>.events} in the output
+	 * directory.
+	 * @param suite the suite to run
+	 * @param label a unique, file-name safe label for this run
+	 * @param additionalProperties system properties for this run only
+	 */
+	public List<TimingRecord> run(ExampleSuite suite, String label, Map<String, String> additionalProperties)
+			throws IOException, InterruptedException {
+		Files.createDirectories(outputDirectory);
+		Path reportFile = outputDirectory.resolve(label + ".csv");
+		Files.deleteIfExists(reportFile);
+		Path eventLog = outputDirectory.resolve(label + ".events");
+
+		Map<String, String> properties = new LinkedHashMap<>(systemProperties);
+		properties.putAll(additionalProperties);
+		properties.put(TimingTestContextManager.REPORT_FILE_PROPERTY, reportFile.toAbsolutePath().toString());
+		properties.put(TimingTestContextManager.EVENT_LOG_FILE_PROPERTY, eventLog.toAbsolutePath().toString());
+		properties.putIfAbsent(TimingTestContextManager.TRACE_PROCESS_NAME_PROPERTY, label);
+
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		properties.forEach((name, value) -> command.add("-D" + name + "=" + value));
+		command.add(JUnitCore.class.getName());
+		command.addAll(suite.getClassNames());
+
+		File log = outputDirectory.resolve(label + ".log").toFile();
+		int exitCode = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start().waitFor();
+		if (exitCode != 0 || !Files.exists(reportFile)) {
+			throw new IllegalStateException("The " + suite + " suite failed for run '" + label + "', see " + log
+					+ ", the timings recorded before it failed can be read from " + eventLog + " with "
+					+ EventLogReader.class.getSimpleName());
+		}
+		return TimingRecord.read(reportFile);
+	}
+
+}
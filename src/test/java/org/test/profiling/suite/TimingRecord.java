@@ -0,0 +1,98 @@
+package org.test.profiling.suite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One row of the CSV report written by {@code TimingTestContextManager} when {@code profiling.report.file} is set. All
+ * times are in milliseconds.
+ */
+public class TimingRecord {
+
+	/**
+	 * The names the transactional listener is reported under, depending on whether the caching variant is in use.
+	 */
+	public static final List<String> TRANSACTIONAL_LISTENERS = List.of("TransactionalTestExecutionListener",
+			"CachingTransactionalTestExecutionListener");
+
+	private final String phase;
+	private final String listener;
+	private final long count;
+	private final double total;
+	private final double mean;
+	private final double max;
+
+	TimingRecord(String phase, String listener, long count, double total, double mean, double max) {
+		this.phase = phase;
+		this.listener = listener;
+		this.count = count;
+		this.total = total;
+		this.mean = mean;
+		this.max = max;
+	}
+
+	public static List<TimingRecord> read(Path file) {
+		try {
+			return Files.readAllLines(file).stream()
+					.skip(1)
+					.filter(line -> !line.isEmpty())
+					.map(line -> line.split(","))
+					.map(columns -> new TimingRecord(columns[0], columns[1], Long.parseLong(columns[2]),
+							Double.parseDouble(columns[3]), Double.parseDouble(columns[4]), Double.parseDouble(columns[5])))
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the mean time of the given phase and listener, or {@code NaN} if it was not recorded.
+	 */
+	public static double mean(List<TimingRecord> records, String phase, String listener) {
+		return records.stream()
+				.filter(record -> record.phase.equals(phase) && record.listener.equals(listener))
+				.mapToDouble(TimingRecord::getMean)
+				.findFirst()
+				.orElse(Double.NaN);
+	}
+
+	/**
+	 * @return the mean time of the transactional listener in the given phase, or {@code NaN} if it was not recorded.
+	 */
+	public static double transactionalMean(List<TimingRecord> records, String phase) {
+		return TRANSACTIONAL_LISTENERS.stream()
+				.mapToDouble(listener -> mean(records, phase, listener))
+				.filter(mean -> !Double.isNaN(mean))
+				.findFirst()
+				.orElse(Double.NaN);
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public String getListener() {
+		return listener;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getTotal() {
+		return total;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+}